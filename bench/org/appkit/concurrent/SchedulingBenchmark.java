@@ -0,0 +1,80 @@
+package org.appkit.concurrent;
+
+import java.util.concurrent.TimeUnit;
+
+import org.appkit.concurrent.SmartExecutor.Scheduling;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the {@link Scheduling} modes of the {@link SmartExecutor}: the cost of scheduling and cancelling a task
+ * while many other tasks are queued, e.g. the throttles of hundreds of tables.
+ *
+ * <pre>ant bench -Dbench=SchedulingBenchmark</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchedulingBenchmark {
+
+	//~ Static fields/initializers -------------------------------------------------------------------------------------
+
+	private static final Runnable NOOP =
+		new Runnable() {
+			@Override
+			public void run() {}
+		};
+
+	//~ Instance fields ------------------------------------------------------------------------------------------------
+
+	@Param({ "DELAY_QUEUE", "TIMING_WHEEL" })
+	public Scheduling scheduling;
+
+	/* tasks waiting in the queue besides the measured ones */
+	@Param({ "0", "1000", "10000" })
+	public int queued;
+
+	private SmartExecutor executor;
+
+	//~ Methods --------------------------------------------------------------------------------------------------------
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		this.executor = SmartExecutor.start(this.scheduling);
+		for (int i = 0; i < this.queued; i++) {
+			this.executor.schedule(1 + (i % 60), TimeUnit.MINUTES, NOOP);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		this.executor.shutdownNow();
+	}
+
+	@Benchmark
+	public boolean scheduleAndCancel() {
+		return this.executor.schedule(1, TimeUnit.HOURS, NOOP).cancel();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public boolean scheduleAndCancelContended() {
+		return this.executor.schedule(1, TimeUnit.HOURS, NOOP).cancel();
+	}
+}
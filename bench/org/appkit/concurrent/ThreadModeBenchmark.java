@@ -0,0 +1,123 @@
+package org.appkit.concurrent;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares a {@link SmartExecutor} on virtual threads with one on a cached thread-pool: how many batches of tasks,
+ * which block for a while like I/O does, are done per second and how many platform threads are needed for it.
+ * Virtual threads don't count as platform threads, only their carriers do.
+ * <p>
+ * Virtual threads need Java 21, on older JVMs the VIRTUAL runs fail in their setup.
+ *
+ * <pre>ant bench -Dbench=ThreadModeBenchmark</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ThreadModeBenchmark {
+
+	//~ Instance fields ------------------------------------------------------------------------------------------------
+
+	@Param({ "PLATFORM", "VIRTUAL" })
+	public String threads;
+
+	/* how long each task blocks, 0 measures the bare overhead of starting tasks */
+	@Param({ "0", "1" })
+	public int blockMillis;
+
+	/* tasks per batch */
+	@Param({ "1000" })
+	public int tasks;
+
+	private SmartExecutor executor;
+
+	//~ Methods --------------------------------------------------------------------------------------------------------
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		if ("VIRTUAL".equals(this.threads)) {
+			if (LoggingThreadFactory.createVirtual() == null) {
+				throw new IllegalStateException("virtual threads need Java 21 or later");
+			}
+			this.executor = SmartExecutor.startVirtual();
+		} else {
+			this.executor = SmartExecutor.start();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		this.executor.shutdownNow();
+	}
+
+	/** runs a batch of tasks and waits until all of them are done */
+	@Benchmark
+	public void batch(final PlatformThreads platformThreads) throws InterruptedException {
+
+		final CountDownLatch done = new CountDownLatch(this.tasks);
+		final long block		  = this.blockMillis;
+		for (int i = 0; i < this.tasks; i++) {
+			this.executor.execute(
+				new Runnable() {
+						@Override
+						public void run() {
+							try {
+								if (block > 0) {
+									Thread.sleep(block);
+								}
+							} catch (final InterruptedException e) {
+								Thread.currentThread().interrupt();
+							} finally {
+								done.countDown();
+							}
+						}
+					});
+		}
+		done.await();
+
+		platformThreads.record();
+	}
+
+	//~ Inner Classes --------------------------------------------------------------------------------------------------
+
+	/** the highest number of live platform threads during an iteration, reported next to the throughput */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class PlatformThreads {
+
+		private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+		public long peakPlatformThreads;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			THREADS.resetPeakThreadCount();
+			this.peakPlatformThreads = 0;
+		}
+
+		void record() {
+			this.peakPlatformThreads = THREADS.getPeakThreadCount();
+		}
+	}
+}
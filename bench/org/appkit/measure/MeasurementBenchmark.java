@@ -0,0 +1,93 @@
+package org.appkit.measure;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The overhead of one pair of {@link org.appkit.measure.Measurement#start(boolean, String)} and
+ * {@link org.appkit.measure.Measurement#stop()}: switched off, without listeners and with a listener doing nothing,
+ * on one and on several threads.
+ *
+ * <pre>ant bench -Dbench=MeasurementBenchmark</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MeasurementBenchmark {
+
+	//~ Static fields/initializers -------------------------------------------------------------------------------------
+
+	private static final org.appkit.measure.Measurement.Listener NOOP_LISTENER =
+		new org.appkit.measure.Measurement.Listener() {
+			@Override
+			public void notifyStart(final org.appkit.measure.Measurement data) {}
+
+			@Override
+			public void notifyData(final org.appkit.measure.Measurement data) {}
+		};
+
+	//~ Instance fields ------------------------------------------------------------------------------------------------
+
+	@Param({ "false", "true" })
+	public boolean listener;
+
+	//~ Methods --------------------------------------------------------------------------------------------------------
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		org.appkit.measure.Measurement.setListener(this.listener ? NOOP_LISTENER : null);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		org.appkit.measure.Measurement.setListener(null);
+	}
+
+	/** the cost left in the code when measuring is switched off */
+	@Benchmark
+	public Object switchedOff() {
+		org.appkit.measure.Measurement.start(false, "switched off");
+		return org.appkit.measure.Measurement.stop(false);
+	}
+
+	@Benchmark
+	public long startStop() {
+		org.appkit.measure.Measurement.start(true, "start/stop");
+		return org.appkit.measure.Measurement.stop().getDurationNanos();
+	}
+
+	/** a pair nested in a running measurement, as in a call-tree */
+	@Benchmark
+	public long startStopNested(final Blackhole blackhole) {
+		org.appkit.measure.Measurement.start(true, "outer");
+		org.appkit.measure.Measurement.start(true, "inner");
+		blackhole.consume(org.appkit.measure.Measurement.stop().getDurationNanos());
+		return org.appkit.measure.Measurement.stop().getDurationNanos();
+	}
+
+	/** per-thread pools and the listener-array are shared-nothing, this should cost the same as one thread */
+	@Benchmark
+	@Threads(4)
+	public long startStopContended() {
+		org.appkit.measure.Measurement.start(true, "contended");
+		return org.appkit.measure.Measurement.stop().getDurationNanos();
+	}
+}
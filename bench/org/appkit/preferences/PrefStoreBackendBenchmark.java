@@ -0,0 +1,127 @@
+package org.appkit.preferences;
+
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the {@link FileBackend} with the {@link JavaPreferencesBackend} holding 10,000 keys, e.g. the column
+ * sizes and orders of hundreds of tables: loading all of them, storing a single one and storing all of them as one
+ * batch.
+ *
+ * <pre>ant bench -Dbench=PrefStoreBackendBenchmark</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PrefStoreBackendBenchmark {
+
+	//~ Instance fields ------------------------------------------------------------------------------------------------
+
+	@Param({ "FILE", "JAVA_PREFERENCES" })
+	public String backendType;
+
+	@Param({ "10000" })
+	public int keys;
+
+	private File folder;
+	private String node;
+	private PrefStoreBackend backend;
+	private final Map<String, String> values = Maps.newHashMap();
+	private int next						 = 0;
+
+	//~ Methods --------------------------------------------------------------------------------------------------------
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		this.folder = File.createTempFile("prefstore", "");
+		this.folder.delete();
+		this.node   = "org/appkit/bench/" + System.nanoTime();
+
+		for (int i = 0; i < this.keys; i++) {
+			this.values.put("table" + (i / 10) + ".column" + (i % 10) + ".width", String.valueOf(i));
+		}
+		this.backend = this.open("preferences.dat");
+		this.backend.storeAll(this.values);
+
+		/* a file can only be opened once per JVM, loading reads a copy */
+		if ("FILE".equals(this.backendType)) {
+			Files.copy(new File(this.folder, "preferences.dat"), new File(this.folder, "loaded.dat"));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws BackingStoreException {
+		this.backend.close();
+		if (this.folder.isDirectory()) {
+			for (final File file : this.folder.listFiles()) {
+				file.delete();
+			}
+			this.folder.delete();
+		}
+		if ("JAVA_PREFERENCES".equals(this.backendType)) {
+			Preferences.userRoot().node(this.node).removeNode();
+		}
+	}
+
+	/** opens the stored keys again and reads all of them, as a PrefStore does on startup */
+	@Benchmark
+	public Map<String, String> load() {
+
+		PrefStoreBackend loaded = this.open("loaded.dat");
+		try {
+			return loaded.getAll(loaded.getKeys());
+		} finally {
+			loaded.close();
+		}
+	}
+
+	@Benchmark
+	public void storeOne() {
+		this.next = (this.next + 1) % this.keys;
+		this.backend.store("table" + (this.next / 10) + ".column" + (this.next % 10) + ".width", "w" + this.next);
+	}
+
+	/** every key gets a new value, so nothing is skipped as unchanged */
+	@Benchmark
+	public void storeAll() {
+		this.next++;
+		for (final Map.Entry<String, String> entry : this.values.entrySet()) {
+			entry.setValue(String.valueOf(this.next));
+		}
+		this.backend.storeAll(this.values);
+	}
+
+	/* the file name is used by the FileBackend only */
+	private PrefStoreBackend open(final String fileName) {
+		if ("FILE".equals(this.backendType)) {
+			return new FileBackend(new File(this.folder, fileName));
+		}
+
+		return JavaPreferencesBackend.create(this.node);
+	}
+}
@@ -0,0 +1,121 @@
+package org.appkit.registry;
+
+import java.util.concurrent.TimeUnit;
+
+import org.appkit.registry.ResourceCache.Entry;
+import org.appkit.registry.TableItemUsages.ItemSetter;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableItem;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sets a color on a whole table of 100,000 items with {@link TableItemUsages} and puts it back, once with the item
+ * setter writing to the items and once with a setter doing nothing, which leaves the bookkeeping of the usages.
+ * <p>
+ * Needs an SWT display, without one the runs fail in their setup. The setup creates the display on the benchmark
+ * thread, which SWT on Mac OS doesn't allow.
+ *
+ * <pre>ant bench -Dbench=TableItemUsagesBenchmark</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TableItemUsagesBenchmark {
+
+	//~ Instance fields ------------------------------------------------------------------------------------------------
+
+	@Param({ "100000" })
+	public int items;
+
+	@Param({ "true", "false" })
+	public boolean setOnItems;
+
+	private Display display;
+	private Shell shell;
+	private Table table;
+	private ResourceCache<Integer, Color> cache;
+	private TableItemUsages<Integer, Color> usages;
+	private Entry<Integer, Color> red;
+	private Entry<Integer, Color> blue;
+
+	//~ Methods --------------------------------------------------------------------------------------------------------
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		try {
+			this.display = Display.getDefault();
+		} catch (final Throwable e) {
+			throw new IllegalStateException("needs an SWT display", e);
+		}
+
+		this.shell = new Shell(this.display);
+		this.table = new Table(this.shell, SWT.NONE);
+		for (int i = 0; i < this.items; i++) {
+			new TableItem(this.table, SWT.NONE);
+		}
+
+		final boolean setColors = this.setOnItems;
+		this.cache  = new ResourceCache<Integer, Color>();
+		this.usages =
+			new TableItemUsages<Integer, Color>(
+				this.cache,
+				new ItemSetter<Color>() {
+					@Override
+					public void set(final TableItem item, final int slot, final Color color) {
+						if (setColors) {
+							item.setForeground(color);
+						}
+					}
+				});
+
+		/* used by the benchmark itself, so putting back all items doesn't dispose them */
+		this.red  = this.cache.add(0xFF0000, new Color(this.display, 255, 0, 0));
+		this.blue = this.cache.add(0x0000FF, new Color(this.display, 0, 0, 255));
+		this.cache.use(this.red);
+		this.cache.use(this.blue);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		if (this.shell != null) {
+			this.shell.dispose();
+			this.cache.release(this.red);
+			this.cache.release(this.blue);
+		}
+	}
+
+	/** uses a color for every item and releases all of them again */
+	@Benchmark
+	public void setAndPutBack() {
+		this.usages.set(this.table, 0, this.items - 1, 0, this.red);
+		this.usages.putBack(this.table, 0, this.items - 1);
+	}
+
+	/** replaces the color of every item, which releases the one used before item by item */
+	@Benchmark
+	public void replace() {
+		this.usages.set(this.table, 0, this.items - 1, 0, this.red);
+		this.usages.set(this.table, 0, this.items - 1, 0, this.blue);
+	}
+}
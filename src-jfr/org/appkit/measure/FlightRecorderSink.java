@@ -0,0 +1,122 @@
+package org.appkit.measure;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Publishes measurements as JDK Flight Recorder events.
+ * <p>
+ * This lives in its own source root, compiled for Java 11, so the rest of the library still builds for Java 7.
+ * {@link MeasurementExporter} loads it reflectively, only if <code>jdk.jfr</code> is available.
+ *
+ * @see MeasurementExporter
+ */
+final class FlightRecorderSink implements Measurement.Listener {
+
+	//~ Instance fields ------------------------------------------------------------------------------------------------
+
+	/* running events of a thread by nesting depth */
+	private final ThreadLocal<MeasurementEvent[]> runningEvents =
+		new ThreadLocal<MeasurementEvent[]>() {
+			@Override
+			protected MeasurementEvent[] initialValue() {
+				return new MeasurementEvent[8];
+			}
+		};
+
+	//~ Methods --------------------------------------------------------------------------------------------------------
+
+	@Override
+	public void notifyStart(final Measurement m) {
+
+		/* committed with its recorded duration once it's stopped */
+		if (m.isRecorded()) {
+			return;
+		}
+
+		MeasurementEvent event = new MeasurementEvent();
+		if (! event.isEnabled()) {
+			return;
+		}
+		event.begin();
+
+		MeasurementEvent running[] = this.runningEvents.get();
+		if (m.getDepth() >= running.length) {
+
+			MeasurementEvent grown[] = new MeasurementEvent[Math.max(m.getDepth() + 1, running.length * 2)];
+			System.arraycopy(running, 0, grown, 0, running.length);
+			running = grown;
+			this.runningEvents.set(running);
+		}
+		running[m.getDepth()] = event;
+	}
+
+	@Override
+	public void notifyData(final Measurement data) {
+		if (data.isRecorded()) {
+
+			/* timed elsewhere, the event itself takes no time */
+			MeasurementEvent event = new MeasurementEvent();
+			if (event.shouldCommit()) {
+				this.commit(event, data);
+			}
+			return;
+		}
+
+		MeasurementEvent running[] = this.runningEvents.get();
+		if (data.getDepth() >= running.length) {
+			return;
+		}
+
+		MeasurementEvent event = running[data.getDepth()];
+		running[data.getDepth()] = null;
+		if (event == null) {
+			return;
+		}
+
+		event.end();
+		if (event.shouldCommit()) {
+			this.commit(event, data);
+		}
+	}
+
+	private void commit(final MeasurementEvent event, final Measurement data) {
+		event.measurement      = data.getName();
+		event.data             = (data.getData() == null) ? null : data.getData().toString();
+		event.depth            = data.getDepth();
+		event.measuredDuration = data.getDurationNanos();
+		event.recorded         = data.isRecorded();
+		event.commit();
+	}
+
+	//~ Inner Classes --------------------------------------------------------------------------------------------------
+
+	@Name("org.appkit.Measurement")
+	@Label("Measurement")
+	@Category("appkit")
+	@Description("A measurement taken with org.appkit.measure.Measurement")
+	static final class MeasurementEvent extends Event {
+
+		@Label("Name")
+		String measurement;
+
+		@Label("Data")
+		String data;
+
+		@Label("Nesting Depth")
+		int depth;
+
+		/* the event's own duration is about 0 for recorded measurements */
+		@Label("Measured Duration")
+		@Timespan(Timespan.NANOSECONDS)
+		long measuredDuration;
+
+		@Label("Recorded")
+		@Description("Timed elsewhere, e.g. the dispatch-latency of the event-loop, and not nested")
+		boolean recorded;
+	}
+}
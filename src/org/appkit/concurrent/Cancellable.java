@@ -0,0 +1,22 @@
+package org.appkit.concurrent;
+
+/**
+ * Handle to a scheduled task that allows cancelling it.
+ *
+ * @see SmartExecutor
+ */
+public interface Cancellable {
+
+	//~ Methods --------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Cancels the task. It is removed from the schedule immediately, no further execution will be started.
+	 * An execution which is already in progress will finish.
+	 *
+	 * @return false if the task was already cancelled or, if it isn't repeating, already started
+	 */
+	boolean cancel();
+
+	/** returns true if the task was cancelled */
+	boolean isCancelled();
+}
@@ -0,0 +1,38 @@
+package org.appkit.concurrent;
+
+import java.util.concurrent.DelayQueue;
+
+/**
+ * {@link TaskQueue} backed by a {@link DelayQueue}. Insertion costs O(log n), removal O(n).
+ *
+ */
+final class DelayTaskQueue implements TaskQueue {
+
+	//~ Instance fields ------------------------------------------------------------------------------------------------
+
+	private final DelayQueue<SmartRunnable> queue = new DelayQueue<SmartRunnable>();
+
+	//~ Methods --------------------------------------------------------------------------------------------------------
+
+	@Override
+	public void put(final SmartRunnable task) {
+		this.queue.put(task);
+	}
+
+	@Override
+	public void remove(final SmartRunnable task) {
+		this.queue.remove(task);
+	}
+
+	@Override
+	public SmartRunnable take() throws InterruptedException {
+		while (true) {
+
+			/* skip tasks which were cancelled but couldn't be removed in time */
+			SmartRunnable task = this.queue.take();
+			if (task.compareAndSetState(SmartRunnable.PENDING, SmartRunnable.EXPIRED)) {
+				return task;
+			}
+		}
+	}
+}
@@ -1,12 +1,29 @@
 package org.appkit.concurrent;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.swt.widgets.Display;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * A GUI that is driven by states, which are shown from worker-threads.
+ * <p>
+ * By default {@link #showState(Enum, Object...)} blocks until the state was shown. GUIs created with a maximum
+ * update-rate work asynchronously instead: states are queued and applied in batches on the display-thread. A pending
+ * update of the same state is coalesced with the new one, which moves to the end of the batch with its data, so at
+ * most one update per state is pending.
+ *
+ */
 public abstract class GUI<E extends Enum<E>> {
 
 	//~ Static fields/initializers -------------------------------------------------------------------------------------
@@ -17,13 +34,46 @@ public abstract class GUI<E extends Enum<E>> {
 	//~ Instance fields ------------------------------------------------------------------------------------------------
 
 	protected final ReportQueue queue;
+	private final boolean async;
+	private final long minUpdateIntervalNanos;
+	private final Runnable flush = new Flush();
+	private final AtomicLong appliedUpdates = new AtomicLong();
+	private final AtomicLong coalescedUpdates = new AtomicLong();
 	private E currentState;
 	private GUIState currentGUIState;
 
+	/* pending states in async mode, guarded by itself */
+	private final LinkedHashMap<E, Object[]> pendingStates = Maps.newLinkedHashMap();
+	private boolean flushScheduled						    = false;
+
+	/* written by the display-thread while holding pendingStates, queued states are dropped once closed */
+	private boolean closed = false;
+
+	/* only accessed by the display-thread */
+	private long lastFlush;
+
 	//~ Constructors ---------------------------------------------------------------------------------------------------
 
+	/** creates a GUI which shows every state synchronously */
 	public GUI() {
-		this.queue											 = ReportQueue.create();
+		this.queue					    = ReportQueue.create();
+		this.async					    = false;
+		this.minUpdateIntervalNanos     = 0;
+	}
+
+	/**
+	 * creates a GUI which shows states asynchronously and coalesces updates
+	 *
+	 * @param maxUpdatesPerSecond how often pending states are applied at most, 0 to apply them on every turn of the
+	 *        event-loop
+	 */
+	public GUI(final int maxUpdatesPerSecond) {
+		Preconditions.checkArgument(maxUpdatesPerSecond >= 0, "update rate must not be negative");
+		this.queue					    = ReportQueue.create();
+		this.async					    = true;
+		this.minUpdateIntervalNanos     =
+			(maxUpdatesPerSecond == 0) ? 0 : (TimeUnit.SECONDS.toNanos(1) / maxUpdatesPerSecond);
+		this.lastFlush				    = System.nanoTime() - this.minUpdateIntervalNanos;
 	}
 
 	//~ Methods --------------------------------------------------------------------------------------------------------
@@ -36,11 +86,25 @@ public abstract class GUI<E extends Enum<E>> {
 		return this.queue;
 	}
 
+	/** returns how many updates were applied */
+	public long getAppliedUpdates() {
+		return this.appliedUpdates.get();
+	}
+
+	/** returns how many updates were superseded by a later one before being applied */
+	public long getCoalescedUpdates() {
+		return this.coalescedUpdates.get();
+	}
+
 	public final void close() {
 		Display.getDefault().syncExec(
 			new Runnable() {
 					@Override
 					public void run() {
+						synchronized (pendingStates) {
+							pendingStates.clear();
+							closed = true;
+						}
 						closeGUI();
 					}
 				});
@@ -48,21 +112,54 @@ public abstract class GUI<E extends Enum<E>> {
 
 	public final void showState(final E state, final Object... data) {
 		Preconditions.checkNotNull(state);
+		if (this.async) {
+			this.queueState(state, data);
+			return;
+		}
+
 		Display.getDefault().syncExec(
 			new Runnable() {
 					@Override
 					public void run() {
-						if (currentState == state) {
-							currentGUIState.update(data);
-						} else {
-							currentState	    = state;
-							currentGUIState = getGUIState(state);
-							currentGUIState.enter(data);
-						}
+						applyState(state, data);
 					}
 				});
 	}
 
+	private void queueState(final E state, final Object[] data) {
+
+		boolean scheduleFlush;
+		synchronized (this.pendingStates) {
+			if (this.closed) {
+				return;
+			}
+
+			/* a pending update of the same state is replaced, the new one goes last */
+			if (this.pendingStates.remove(state) != null) {
+				this.coalescedUpdates.incrementAndGet();
+			}
+			this.pendingStates.put(state, data);
+
+			scheduleFlush		    = ! this.flushScheduled;
+			this.flushScheduled     = true;
+		}
+
+		if (scheduleFlush) {
+			Display.getDefault().asyncExec(this.flush);
+		}
+	}
+
+	private void applyState(final E state, final Object[] data) {
+		if (this.currentState == state) {
+			this.currentGUIState.update(data);
+		} else {
+			this.currentState	    = state;
+			this.currentGUIState = this.getGUIState(state);
+			this.currentGUIState.enter(data);
+		}
+		this.appliedUpdates.incrementAndGet();
+	}
+
 	//~ Inner Interfaces -----------------------------------------------------------------------------------------------
 
 	public interface GUIState {
@@ -70,4 +167,35 @@ public abstract class GUI<E extends Enum<E>> {
 
 		public void update(Object... data);
 	}
-}
\ No newline at end of file
+
+	//~ Inner Classes --------------------------------------------------------------------------------------------------
+
+	/* runs on the display-thread */
+	private final class Flush implements Runnable {
+		@Override
+		public void run() {
+			if (closed) {
+				return;
+			}
+
+			/* respect the maximum update-rate */
+			long wait = (lastFlush + minUpdateIntervalNanos) - System.nanoTime();
+			if (wait > 0) {
+				Display.getCurrent().timerExec((int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)), this);
+				return;
+			}
+
+			List<Map.Entry<E, Object[]>> states;
+			synchronized (pendingStates) {
+				states = Lists.newArrayList(pendingStates.entrySet());
+				pendingStates.clear();
+				flushScheduled = false;
+			}
+
+			lastFlush = System.nanoTime();
+			for (final Map.Entry<E, Object[]> pending : states) {
+				applyState(pending.getKey(), pending.getValue());
+			}
+		}
+	}
+}
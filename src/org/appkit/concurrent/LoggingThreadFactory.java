@@ -1,6 +1,8 @@
 package org.appkit.concurrent;
 
 import java.lang.Thread.UncaughtExceptionHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 
 import java.util.concurrent.ThreadFactory;
 
@@ -11,7 +13,14 @@ public final class LoggingThreadFactory implements ThreadFactory {
 
 	//~ Static fields/initializers -------------------------------------------------------------------------------------
 
-	private static final Logger L = LoggerFactory.getLogger(LoggingThreadFactory.class);
+	private static final Logger L										 = LoggerFactory.getLogger(LoggingThreadFactory.class);
+	private static final UncaughtExceptionHandler LOGGING_EXCEPTION_HANDLER =
+		new UncaughtExceptionHandler() {
+			@Override
+			public void uncaughtException(final Thread t, final Throwable e) {
+				L.error(t.getName() + " " + e.getMessage(), e);
+			}
+		};
 
 	//~ Constructors ---------------------------------------------------------------------------------------------------
 
@@ -23,17 +32,44 @@ public final class LoggingThreadFactory implements ThreadFactory {
 		return new LoggingThreadFactory();
 	}
 
+	/**
+	 * Creates a factory for virtual threads which log uncaught exceptions the same way.
+	 * Virtual threads are looked up reflectively, since they only exist on Java 21 and later.
+	 *
+	 * @return the factory or null if the running JVM doesn't support virtual threads
+	 */
+	public static ThreadFactory createVirtual() {
+		try {
+
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Object builder		  = Thread.class.getMethod("ofVirtual").invoke(null);
+			Method name			  = builderClass.getMethod("name", String.class, long.class);
+			Method handler		  = builderClass.getMethod("uncaughtExceptionHandler", UncaughtExceptionHandler.class);
+			Method factory		  = builderClass.getMethod("factory");
+
+			builder     = name.invoke(builder, "virtual-", 0L);
+			builder     = handler.invoke(builder, LOGGING_EXCEPTION_HANDLER);
+
+			return (ThreadFactory) factory.invoke(builder);
+
+		} catch (final ClassNotFoundException e) {
+			return null;
+		} catch (final NoSuchMethodException e) {
+			return null;
+		} catch (final IllegalAccessException e) {
+			L.error(e.getMessage(), e);
+			return null;
+		} catch (final InvocationTargetException e) {
+			L.error(e.getMessage(), e);
+			return null;
+		}
+	}
+
 	@Override
 	public Thread newThread(final Runnable r) {
 
 		Thread thread = new Thread(r);
-		thread.setUncaughtExceptionHandler(
-			new UncaughtExceptionHandler() {
-					@Override
-					public void uncaughtException(final Thread t, final Throwable e) {
-						L.error(t.getName() + " " + e.getMessage(), e);
-					}
-				});
+		thread.setUncaughtExceptionHandler(LOGGING_EXCEPTION_HANDLER);
 
 		return thread;
 	}
@@ -0,0 +1,187 @@
+package org.appkit.concurrent;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Forwards the reports of any number of source {@link ReportQueue}s into one queue.
+ * <p>
+ * There is no thread per source: queuing a report into a source triggers a single pump on the given
+ * {@link Executor}, which moves the reports of all sources in batches and ends as soon as they are empty.
+ * Only one pump is running at a time, so the reports of each source keep their order.
+ * <p>
+ * If forwarding fails, the reports of the batch not yet forwarded are kept and forwarded first by the next pump,
+ * before any other report is taken from the sources. The report that failed is among them, it is forwarded twice if
+ * the target queued it before failing.
+ *
+ */
+public final class ReportFunnel {
+
+	//~ Static fields/initializers -------------------------------------------------------------------------------------
+
+	private static final Logger L		 = LoggerFactory.getLogger(ReportFunnel.class);
+	private static final int BATCH_SIZE = 64;
+
+	//~ Instance fields ------------------------------------------------------------------------------------------------
+
+	private final Executor executor;
+	private final ReportQueue reports;
+	private final List<ReportQueue> sources = new CopyOnWriteArrayList<ReportQueue>();
+	private final AtomicInteger pumpRequests = new AtomicInteger();
+	private final Runnable pump			    = new Pump();
+	private final Runnable signal		    = new Signal();
+	private volatile boolean closed		    = false;
+
+	/* reports a failed pump didn't forward, only touched by the running pump */
+	private final List<Report> unsent = Lists.newArrayList();
+
+	//~ Constructors ---------------------------------------------------------------------------------------------------
+
+	private ReportFunnel(final Executor executor, final ReportQueue reports) {
+		this.executor     = executor;
+		this.reports	  = reports;
+	}
+
+	//~ Methods --------------------------------------------------------------------------------------------------------
+
+	/** creates a funnel into an unbounded queue */
+	public static ReportFunnel create(final Executor executor) {
+		return create(executor, ReportQueue.create());
+	}
+
+	/** creates a funnel into the given queue */
+	public static ReportFunnel create(final Executor executor, final ReportQueue reports) {
+		Preconditions.checkNotNull(executor);
+		Preconditions.checkNotNull(reports);
+
+		return new ReportFunnel(executor, reports);
+	}
+
+	/** returns the queue all reports are forwarded to */
+	public ReportQueue getReports() {
+		return this.reports;
+	}
+
+	/**
+	 * Starts forwarding the reports of the given queue, including those already queued.
+	 *
+	 * @throws IllegalStateException if the funnel was closed or the queue is a source of another funnel already
+	 */
+	public void addSource(final ReportQueue source) {
+		Preconditions.checkState(! this.closed, "funnel was closed");
+		Preconditions.checkState(source.setListener(this.signal), "queue is a source of another funnel already");
+		L.debug("adding source");
+
+		this.sources.add(source);
+		this.signal.run();
+	}
+
+	/** Stops forwarding the reports of the given queue. Reports not yet forwarded stay in it. */
+	public void removeSource(final ReportQueue source) {
+		if (this.sources.remove(source)) {
+			L.debug("removing source");
+			source.setListener(null);
+		}
+	}
+
+	/** Removes all sources. The funnel can't be used afterwards. */
+	public void close() {
+		this.closed = true;
+		for (final ReportQueue source : this.sources) {
+			this.removeSource(source);
+		}
+	}
+
+	//~ Inner Classes --------------------------------------------------------------------------------------------------
+
+	private final class Signal implements Runnable {
+		@Override
+		public void run() {
+
+			/* only the first request starts a pump, the others are picked up by the running one */
+			if (pumpRequests.getAndIncrement() == 0) {
+				try {
+					executor.execute(pump);
+				} catch (final RejectedExecutionException e) {
+
+					/* let the next request try again, the reports stay in their sources until then */
+					pumpRequests.set(0);
+					L.warn("executor rejected the pump, reports stay queued until the next one");
+				}
+			}
+		}
+	}
+
+	private final class Pump implements Runnable {
+		@Override
+		public void run() {
+
+			boolean drained = false;
+			try {
+				this.pumpUntilDrained();
+				drained = true;
+			} catch (final RuntimeException e) {
+				L.error("forwarding reports failed, the rest is forwarded with the next report", e);
+			} finally {
+
+				/* a failed pump must not keep the next request from starting a new one */
+				if (! drained) {
+					pumpRequests.set(0);
+				}
+			}
+		}
+
+		private void pumpUntilDrained() {
+
+			List<Report> batch = Lists.newArrayListWithCapacity(BATCH_SIZE);
+			int requests	   = pumpRequests.get();
+
+			/* what a failed pump left behind goes first */
+			batch.addAll(unsent);
+			unsent.clear();
+			this.forward(batch);
+
+			while (true) {
+
+				boolean moreQueued;
+				do {
+					moreQueued = false;
+					for (final ReportQueue source : sources) {
+						if (source.drainTo(batch, BATCH_SIZE) == BATCH_SIZE) {
+							moreQueued = true;
+						}
+						this.forward(batch);
+					}
+				} while (moreQueued);
+
+				requests = pumpRequests.addAndGet(-requests);
+				if (requests == 0) {
+					return;
+				}
+			}
+		}
+
+		/* forwards and clears the batch, if that fails the reports from the failed one on are kept as unsent */
+		private void forward(final List<Report> batch) {
+
+			int sent = 0;
+			try {
+				for (; sent < batch.size(); sent++) {
+					reports.report(batch.get(sent));
+				}
+			} finally {
+				unsent.addAll(batch.subList(sent, batch.size()));
+				batch.clear();
+			}
+		}
+	}
+}
@@ -1,17 +1,25 @@
 package org.appkit.concurrent;
 
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Queues;
 
-import java.util.Arrays;
-import java.util.List;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * A queue of {@link Report}s, used to pass progress-information from background-jobs to the GUI.
+ * <p>
+ * Queues are unbounded by default. Bounded queues handle reports that don't fit anymore according to
+ * their {@link Overflow}-policy.
+ *
+ */
 public class ReportQueue {
 
 	//~ Static fields/initializers -------------------------------------------------------------------------------------
@@ -20,24 +28,116 @@ public class ReportQueue {
 
 	//~ Instance fields ------------------------------------------------------------------------------------------------
 
-	private final BlockingQueue<Report> queue = Queues.newLinkedBlockingQueue();
+	private final BlockingQueue<Report> queue;
+	private final Overflow overflow;
+	private final AtomicLong dropped = new AtomicLong();
+
+	/* notified after a report was queued, set by the ReportFunnel this queue is a source of */
+	private volatile Runnable listener;
 
 	//~ Constructors ---------------------------------------------------------------------------------------------------
 
-	private ReportQueue() {}
+	private ReportQueue(final BlockingQueue<Report> queue, final Overflow overflow) {
+		this.queue		  = queue;
+		this.overflow     = overflow;
+	}
 
 	//~ Methods --------------------------------------------------------------------------------------------------------
 
+	/** creates an unbounded queue */
 	public static ReportQueue create() {
-		return new ReportQueue();
+		return new ReportQueue(Queues.<Report>newLinkedBlockingQueue(), Overflow.BLOCK);
+	}
+
+	/** creates a queue holding at most <code>capacity</code> reports */
+	public static ReportQueue create(final int capacity, final Overflow overflow) {
+		Preconditions.checkArgument(capacity > 0, "capacity must be positive");
+		Preconditions.checkNotNull(overflow);
+
+		return new ReportQueue(Queues.<Report>newLinkedBlockingQueue(capacity), overflow);
 	}
 
 	public void report(final Report r) {
-		this.queue.add(r);
+		Preconditions.checkNotNull(r);
+		if (this.enqueue(r)) {
+
+			Runnable l = this.listener;
+			if (l != null) {
+				l.run();
+			}
+		}
 	}
 
-	public void report(final Enum<?> type, Object... data) {
-		this.queue.add(new Report(type, ImmutableList.copyOf(data)));
+	private boolean enqueue(final Report r) {
+		if (this.queue.offer(r)) {
+			return true;
+		}
+
+		switch (this.overflow) {
+			case BLOCK:
+				try {
+					this.queue.put(r);
+				} catch (final InterruptedException e) {
+					L.debug("interrupted while waiting for space, dropping {}", r);
+					this.dropped.incrementAndGet();
+					Thread.currentThread().interrupt();
+					return false;
+				}
+				break;
+
+			case DROP_NEWEST:
+				this.dropped.incrementAndGet();
+				return false;
+
+			case COALESCE_BY_TYPE:
+				if (this.removeOldestOfType(r.type)) {
+					this.dropped.incrementAndGet();
+					if (this.queue.offer(r)) {
+						break;
+					}
+				}
+
+				/* no report of the same type */
+				this.offerDroppingOldest(r);
+				break;
+
+			case DROP_OLDEST:
+				this.offerDroppingOldest(r);
+				break;
+		}
+
+		return true;
+	}
+
+	private void offerDroppingOldest(final Report r) {
+		while (! this.queue.offer(r)) {
+			if (this.queue.poll() != null) {
+				this.dropped.incrementAndGet();
+			}
+		}
+	}
+
+	public void report(final Enum<?> type, final Object... data) {
+
+		/* don't bother creating the report if it would be dropped anyway */
+		if ((this.overflow == Overflow.DROP_NEWEST) && (this.queue.remainingCapacity() == 0)) {
+			this.dropped.incrementAndGet();
+			return;
+		}
+		this.report(new Report(type, ImmutableList.copyOf(data)));
+	}
+
+	private boolean removeOldestOfType(final Enum<?> type) {
+
+		Iterator<Report> it = this.queue.iterator();
+		while (it.hasNext()) {
+			if (it.next().type == type) {
+				it.remove();
+				return true;
+			}
+		}
+
+		return false;
 	}
 
 	public Report take() throws InterruptedException {
@@ -48,47 +148,65 @@ public class ReportQueue {
 		return this.queue.poll();
 	}
 
-	public static ReportQueue funnel(final Executor executor, final ReportQueue reports,
-									 final ReportQueue... moreReports) {
-
-		List<ReportQueue> sources = Lists.newArrayList();
-		sources.add(reports);
-		sources.addAll(Arrays.asList(moreReports));
-
-		ReportQueue funnel = create();
-		L.debug("creating FunnelProcess for {} sources", sources.size());
-		for (final ReportQueue source : sources) {
-			L.debug("creating FunnelProcess for source");
+	/**
+	 * Removes at most <code>maxReports</code> reports and adds them to the given collection,
+	 * without blocking and in a single step.
+	 *
+	 * @return the number of reports transferred
+	 */
+	public int drainTo(final Collection<? super Report> target, final int maxReports) {
+		return this.queue.drainTo(target, maxReports);
+	}
 
-			FunnelingProcess process = new FunnelingProcess();
-			process.source     = source;
-			process.funnel     = funnel;
-			executor.execute(process);
+	/** sets the listener which is run after a report was queued, returns false if another one is set already */
+	boolean setListener(final Runnable listener) {
+		synchronized (this) {
+			if ((listener != null) && (this.listener != null)) {
+				return false;
+			}
+			this.listener = listener;
+			return true;
 		}
+	}
 
-		return funnel;
+	/** returns the number of queued reports */
+	public int size() {
+		return this.queue.size();
 	}
 
-	//~ Inner Classes --------------------------------------------------------------------------------------------------
+	/** returns how many reports were dropped because the queue was full */
+	public long getDroppedCount() {
+		return this.dropped.get();
+	}
 
-	private static final class FunnelingProcess implements Runnable {
+	/**
+	 * Creates a queue which receives all reports of the given queues.
+	 *
+	 * @see ReportFunnel
+	 */
+	public static ReportQueue funnel(final Executor executor, final ReportQueue reports,
+									 final ReportQueue... moreReports) {
 
-		private ReportQueue source;
-		private ReportQueue funnel;
+		ReportFunnel funnel = ReportFunnel.create(executor);
+		funnel.addSource(reports);
+		for (final ReportQueue source : moreReports) {
+			funnel.addSource(source);
+		}
 
-		@Override
-		public void run() {
-			L.debug("[FunnelingProcess] begin");
-			try {
-				while (true) {
+		return funnel.getReports();
+	}
 
-					Report r = source.take();
-					funnel.report(r);
-				}
-			} catch (final InterruptedException e) {
-				L.error(e.getMessage(), e);
-			}
-			L.debug("[FunnelingProcess] exit");
-		}
+	//~ Enumerations ---------------------------------------------------------------------------------------------------
+
+	/** what a bounded queue does with a report that doesn't fit anymore */
+	public enum Overflow {
+		/** wait for space to become available */
+		BLOCK,
+		/** remove the oldest queued report */
+		DROP_OLDEST,
+		/** drop the new report */
+		DROP_NEWEST,
+		/** remove the oldest queued report of the same type, or the oldest report if there is none */
+		COALESCE_BY_TYPE;
 	}
-}
\ No newline at end of file
+}
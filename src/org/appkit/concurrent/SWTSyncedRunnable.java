@@ -2,12 +2,21 @@ package org.appkit.concurrent;
 
 import org.eclipse.swt.widgets.Display;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 /**
- * Wrapper for a Runnable that will execute it in the given {@link Display}'s thread.
+ * Wrapper for a Runnable that will execute it in the given {@link Display}'s thread and wait for it to finish.
+ * Runnables from other threads are batched by the display's {@link UIDispatcher}. If the display is disposed the
+ * Runnable isn't run.
  *
  */
 public final class SWTSyncedRunnable implements Runnable {
 
+	//~ Static fields/initializers -------------------------------------------------------------------------------------
+
+	private static final Logger L = LoggerFactory.getLogger(SWTSyncedRunnable.class);
+
 	//~ Instance fields ------------------------------------------------------------------------------------------------
 
 	private final Display display;
@@ -29,13 +38,14 @@ public final class SWTSyncedRunnable implements Runnable {
 	@Override
 	public final void run() {
 		if (this.display.isDisposed()) {
+			L.warn("display is disposed, not running {}", this.runnable);
 			return;
 		}
 
 		if (this.display.getThread() == Thread.currentThread()) {
 			this.runnable.run();
 		} else {
-			this.display.syncExec(this);
+			UIDispatcher.forDisplay(this.display).sync(this.runnable);
 		}
 	}
 }
\ No newline at end of file
@@ -2,16 +2,17 @@ package org.appkit.concurrent;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
 
-import java.util.Map;
-import java.util.Set;
-import java.util.UUID;
-import java.util.concurrent.DelayQueue;
+import java.lang.reflect.InvocationTargetException;
+
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,6 +20,12 @@ import org.slf4j.LoggerFactory;
 /**
  * An {@link Executor} that provides commonly-used methods.
  * It uses a Scheduler-Thread to schedule and run tasks.
+ * <p>
+ * Delayed, repeating and throttled tasks are kept either in a {@link java.util.concurrent.DelayQueue} (the default)
+ * or in a hashed timing-wheel, see {@link Scheduling}.
+ * <p>
+ * Instances created with {@link #startVirtual()} run every task on its own virtual thread, while the
+ * Scheduler-Thread is a dedicated platform thread. Scheduling works the same in all modes.
  *
  */
 public final class SmartExecutor implements Executor, Throttle.Supplier {
@@ -31,14 +38,16 @@ public final class SmartExecutor implements Executor, Throttle.Supplier {
 
 	private final boolean executorCreatedInternally;
 	private final ExecutorService executorService;
-	private final DelayQueue<SmartRunnable> taskQueue = new DelayQueue<SmartRunnable>();
-	private final Map<String, SmartRunnable> throttledTasks = Maps.newHashMap();
-	private final Set<Runnable> cancelledTasks = Sets.newHashSet();
-	private Thread schedulingThread;
+	private final TaskQueue taskQueue;
+	private final ConcurrentMap<Runnable, SmartRunnable> repeatingTasks = Maps.newConcurrentMap();
+	private volatile Thread schedulingThread;
+	private volatile boolean shutdown = false;
 
 	//~ Constructors ---------------------------------------------------------------------------------------------------
 
-	private SmartExecutor(final ExecutorService executorService) {
+	private SmartExecutor(final ExecutorService executorService, final Scheduling scheduling) {
+		Preconditions.checkNotNull(scheduling);
+		this.taskQueue = scheduling.createTaskQueue();
 		if (executorService != null) {
 			this.executorService  = executorService;
 			this.executorCreatedInternally = false;
@@ -49,16 +58,62 @@ public final class SmartExecutor implements Executor, Throttle.Supplier {
 		this.executorService.execute(new Scheduler());
 	}
 
+	private SmartExecutor(final ThreadFactory virtualThreadFactory, final Scheduling scheduling) {
+		Preconditions.checkNotNull(scheduling);
+		this.taskQueue					   = scheduling.createTaskQueue();
+		this.executorService			   = newThreadPerTaskExecutor(virtualThreadFactory);
+		this.executorCreatedInternally     = true;
+
+		/* the scheduler blocks for its whole lifetime, so it gets a platform thread of its own */
+		Thread thread = LoggingThreadFactory.create().newThread(new Scheduler());
+		thread.setName("SmartExecutor-Scheduler");
+		thread.start();
+	}
+
 	//~ Methods --------------------------------------------------------------------------------------------------------
 
 	/** Creates a new instance based on a cached thread-pool. It has to be shutdown after use. */
 	public static SmartExecutor start() {
-		return new SmartExecutor(null);
+		return new SmartExecutor((ExecutorService) null, Scheduling.DELAY_QUEUE);
+	}
+
+	/** Creates a new instance based on a cached thread-pool using the given scheduling. It has to be shutdown after use. */
+	public static SmartExecutor start(final Scheduling scheduling) {
+		return new SmartExecutor((ExecutorService) null, scheduling);
+	}
+
+	/**
+	 * Creates a new instance which runs every task on a new virtual thread. It has to be shutdown after use.
+	 * If the JVM doesn't support virtual threads (before Java 21) a cached thread-pool is used instead.
+	 */
+	public static SmartExecutor startVirtual() {
+		return startVirtual(Scheduling.DELAY_QUEUE);
+	}
+
+	/**
+	 * Creates a new instance which runs every task on a new virtual thread, using the given scheduling.
+	 *
+	 * @see #startVirtual()
+	 */
+	public static SmartExecutor startVirtual(final Scheduling scheduling) {
+
+		ThreadFactory factory = LoggingThreadFactory.createVirtual();
+		if (factory == null) {
+			L.warn("virtual threads aren't supported by this JVM, using a cached thread-pool");
+			return new SmartExecutor((ExecutorService) null, scheduling);
+		}
+
+		return new SmartExecutor(factory, scheduling);
 	}
 
 	/** Creates a new instance using the given executor-service */
 	public static SmartExecutor startUsing(final ExecutorService executorService) {
-		return new SmartExecutor(executorService);
+		return new SmartExecutor(executorService, Scheduling.DELAY_QUEUE);
+	}
+
+	/** Creates a new instance using the given executor-service and scheduling */
+	public static SmartExecutor startUsing(final ExecutorService executorService, final Scheduling scheduling) {
+		return new SmartExecutor(executorService, scheduling);
 	}
 
 	/** Shuts the executor down
@@ -70,6 +125,7 @@ public final class SmartExecutor implements Executor, Throttle.Supplier {
 		Preconditions.checkState(
 			this.executorCreatedInternally,
 			"executor-service wasn't created within this instance");
+		this.stopScheduler();
 		this.executorService.shutdownNow();
 	}
 
@@ -82,10 +138,34 @@ public final class SmartExecutor implements Executor, Throttle.Supplier {
 		Preconditions.checkState(
 			this.executorCreatedInternally,
 			"executor-service wasn't created within this instance");
-		this.schedulingThread.interrupt();
+		this.stopScheduler();
 		this.executorService.shutdown();
 	}
 
+	private void stopScheduler() {
+		this.shutdown = true;
+
+		Thread thread = this.schedulingThread;
+		if (thread != null) {
+			thread.interrupt();
+		}
+	}
+
+	/* Executors.newThreadPerTaskExecutor exists since Java 21 only */
+	private static ExecutorService newThreadPerTaskExecutor(final ThreadFactory threadFactory) {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(
+				null,
+				threadFactory);
+		} catch (final NoSuchMethodException e) {
+			throw new IllegalStateException(e);
+		} catch (final IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		} catch (final InvocationTargetException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
 	/** Schedules a Runnable to run once */
 	@Override
 	public void execute(final Runnable runnable) {
@@ -93,45 +173,218 @@ public final class SmartExecutor implements Executor, Throttle.Supplier {
 	}
 
 	/** Schedules a Runnable to be executed after a fixed period of time */
-	public void schedule(final long delay, final TimeUnit timeUnit, final Runnable runnable) {
-		this.taskQueue.put(new SmartRunnable(runnable, delay, timeUnit, false, null));
+	public Cancellable schedule(final long delay, final TimeUnit timeUnit, final Runnable runnable) {
+
+		SmartRunnable task = new SmartRunnable(runnable, delay, timeUnit, false, false);
+		this.taskQueue.put(task);
+
+		return new TaskHandle(task, this.taskQueue, this.repeatingTasks);
 	}
 
 	/** Schedules a Runnable to be executed using a fixed delay between the end of a run and the start of the next */
-	public void scheduleAtFixedRate(final long interval, final TimeUnit timeUnit, final Runnable runnable) {
-		this.taskQueue.put(new SmartRunnable(runnable, interval, timeUnit, true, null));
+	public Cancellable scheduleAtFixedRate(final long interval, final TimeUnit timeUnit, final Runnable runnable) {
+
+		SmartRunnable task = new SmartRunnable(runnable, interval, timeUnit, true, false);
+		this.repeatingTasks.put(runnable, task);
+		this.taskQueue.put(task);
+
+		return new TaskHandle(task, this.taskQueue, this.repeatingTasks);
 	}
 
-	/** Cancels a scheduled repeating runnable */
+	/**
+	 * Cancels a scheduled repeating runnable. If the same runnable was scheduled more than once,
+	 * only the latest schedule is cancelled.
+	 *
+	 * @see Cancellable#cancel()
+	 */
 	public void cancelRepeatingRunnable(final Runnable runnable) {
-		this.cancelledTasks.add(runnable);
+
+		SmartRunnable task = this.repeatingTasks.get(runnable);
+		if (task != null) {
+			new TaskHandle(task, this.taskQueue, this.repeatingTasks).cancel();
+		}
 	}
 
-	/** Creates a new {@link Throttle} with the given delay */
+	/** Creates a new {@link Throttle} with the given delay, firing on the trailing edge */
 	@Override
 	public Throttle createThrottle(final long delay, final TimeUnit timeUnit) {
-		return new SimpleThrottle(delay, timeUnit);
+		return new SimpleThrottle(this.executorService, this.taskQueue, delay, timeUnit, false, true);
 	}
 
-	//~ Inner Classes --------------------------------------------------------------------------------------------------
+	/**
+	 * Creates a new {@link Throttle} with the given delay.
+	 *
+	 * @param leadingEdge run the first Runnable of a series immediately
+	 * @param trailingEdge run the last Runnable of a series once no new one was scheduled for the given delay
+	 * @throws IllegalArgumentException if neither edge was chosen
+	 */
+	public Throttle createThrottle(final long delay, final TimeUnit timeUnit, final boolean leadingEdge,
+								   final boolean trailingEdge) {
+		return new SimpleThrottle(this.executorService, this.taskQueue, delay, timeUnit, leadingEdge, trailingEdge);
+	}
+
+	/* queues a repeating task again after it ran, unless it was cancelled in the meantime */
+	static void reschedule(final SmartRunnable task, final TaskQueue taskQueue) {
+		task.reset();
+		if (task.compareAndSetState(SmartRunnable.EXPIRED, SmartRunnable.PENDING)) {
+			taskQueue.put(task);
+		}
+	}
+
+	//~ Enumerations ---------------------------------------------------------------------------------------------------
+
+	/** How delayed, repeating and throttled tasks are kept until they are due */
+	public enum Scheduling {
+		/** a {@link java.util.concurrent.DelayQueue}: exact deadlines, O(log n) insertion */
+		DELAY_QUEUE {
+			@Override
+			TaskQueue createTaskQueue() {
+				return new DelayTaskQueue();
+			}
+		},
+		/**
+		 * a hashed timing-wheel with a resolution of 10 milliseconds: O(1) insertion and cancellation, suited for
+		 * large numbers of throttles
+		 */
+		TIMING_WHEEL {
+			@Override
+			TaskQueue createTaskQueue() {
+				return new TimingWheelTaskQueue(10, TimeUnit.MILLISECONDS, 512);
+			}
+		};
 
-	private final class SimpleThrottle implements Throttle {
+		abstract TaskQueue createTaskQueue();
+	}
 
-		private final String uuid	    = UUID.randomUUID().toString();
-		private final long delay;
-		private final TimeUnit timeUnit;
+	//~ Inner Classes --------------------------------------------------------------------------------------------------
 
-		public SimpleThrottle(final long delay, final TimeUnit timeUnit) {
-			this.delay				    = delay;
-			this.timeUnit			    = timeUnit;
+	/**
+	 * A throttle owns exactly one {@link SmartRunnable} which is queued while a series is in progress.
+	 * New Runnables only replace the pending one, so the queue never holds more than one entry per throttle.
+	 * When the slot becomes due before the series went quiet for the full delay it is re-queued
+	 * with the new deadline.
+	 */
+	static final class SimpleThrottle implements Throttle, Runnable {
+
+		private final Executor executor;
+		private final TaskQueue taskQueue;
+		private final long delayNanos;
+		private final boolean leadingEdge;
+		private final boolean trailingEdge;
+		private final SmartRunnable slot;
+		private final AtomicBoolean scheduled		 = new AtomicBoolean(false);
+		private final AtomicReference<Runnable> pending = new AtomicReference<Runnable>();
+		private volatile long lastCall;
+
+		public SimpleThrottle(final Executor executor, final TaskQueue taskQueue, final long delay,
+							  final TimeUnit timeUnit, final boolean leadingEdge, final boolean trailingEdge) {
+			Preconditions.checkArgument(leadingEdge || trailingEdge, "throttle has to fire on at least one edge");
+			this.executor		  = executor;
+			this.taskQueue		  = taskQueue;
+			this.delayNanos		  = timeUnit.toNanos(delay);
+			this.leadingEdge	  = leadingEdge;
+			this.trailingEdge     = trailingEdge;
+			this.slot			  = new SmartRunnable(this, delay, timeUnit, false, true);
 		}
 
 		@Override
 		public void throttledExecution(final Runnable runnable) {
+			Preconditions.checkNotNull(runnable);
+
+			long now = System.nanoTime();
+			this.lastCall = now;
+
+			/* publish before checking for a running series: a series that ends concurrently re-checks pending after
+			 * clearing scheduled, so the Runnable is either picked up by it or by the series started here */
+			if (this.trailingEdge) {
+				this.pending.set(runnable);
+			}
+
+			if (this.scheduled.compareAndSet(false, true)) {
+
+				/* start of a series */
+				if (this.leadingEdge) {
+
+					Runnable first = this.trailingEdge ? this.pending.getAndSet(null) : runnable;
+					if (first != null) {
+						this.executor.execute(first);
+					}
+				}
+				this.slot.resetTo(now + this.delayNanos);
+				this.taskQueue.put(this.slot);
+			}
+		}
+
+		/* called by the scheduler-thread once the slot is due */
+		@Override
+		public void run() {
+
+			long quietUntil = this.lastCall + this.delayNanos;
+			if ((quietUntil - System.nanoTime()) > 0) {
+				this.slot.resetTo(quietUntil);
+				this.taskQueue.put(this.slot);
+				return;
+			}
+
+			/* end of series */
+			Runnable runnable = this.pending.getAndSet(null);
+			this.scheduled.set(false);
+			if (runnable != null) {
+				this.executor.execute(runnable);
+			}
+
+			/* a Runnable published while closing the series, whose caller still saw it running */
+			if ((this.pending.get() != null) && this.scheduled.compareAndSet(false, true)) {
+				this.slot.resetTo(this.lastCall + this.delayNanos);
+				this.taskQueue.put(this.slot);
+			}
+		}
+	}
+
+	static final class TaskHandle implements Cancellable {
 
-			SmartRunnable thrTask = new SmartRunnable(runnable, this.delay, this.timeUnit, false, uuid);
-			throttledTasks.put(thrTask.getThrottleName(), thrTask);
-			taskQueue.put(thrTask);
+		private final SmartRunnable task;
+		private final TaskQueue taskQueue;
+		private final ConcurrentMap<Runnable, SmartRunnable> repeatingTasks;
+
+		public TaskHandle(final SmartRunnable task, final TaskQueue taskQueue,
+						  final ConcurrentMap<Runnable, SmartRunnable> repeatingTasks) {
+			this.task			    = task;
+			this.taskQueue		    = taskQueue;
+			this.repeatingTasks     = repeatingTasks;
+		}
+
+		@Override
+		public boolean cancel() {
+			while (true) {
+
+				int state = this.task.getState();
+				if (state == SmartRunnable.PENDING) {
+					if (this.task.compareAndSetState(SmartRunnable.PENDING, SmartRunnable.CANCELLED)) {
+						this.taskQueue.remove(this.task);
+						break;
+					}
+				} else if ((state == SmartRunnable.EXPIRED) && this.task.isRepeating()) {
+
+					/* currently running, the task won't be rescheduled */
+					if (this.task.compareAndSetState(SmartRunnable.EXPIRED, SmartRunnable.CANCELLED)) {
+						break;
+					}
+				} else {
+					return false;
+				}
+			}
+
+			if (this.task.isRepeating()) {
+				this.repeatingTasks.remove(this.task.getRunnable(), this.task);
+			}
+
+			return true;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return this.task.getState() == SmartRunnable.CANCELLED;
 		}
 	}
 
@@ -140,33 +393,29 @@ public final class SmartExecutor implements Executor, Throttle.Supplier {
 		public void run() {
 			schedulingThread = Thread.currentThread();
 			try {
-				while (true) {
+				while (! shutdown) {
 
 					/* wait for the next runnable to become available */
 					final SmartRunnable task = SmartExecutor.this.taskQueue.take();
 
 					if (task.isRepeating()) {
 
-						/* if runnable wasn't cancelled tell executor to run the action and reschedule it afterwards */
-						if (cancelledTasks.contains(task.getRunnable())) {
-							cancelledTasks.remove(task.getRunnable());
-						} else {
-							SmartExecutor.this.executorService.execute(
-								new Runnable() {
-										@Override
-										public void run() {
-											task.run();
-											task.reset();
-											SmartExecutor.this.taskQueue.put(task);
+						/* tell executor to run the action and reschedule it afterwards unless it was cancelled */
+						SmartExecutor.this.executorService.execute(
+							new Runnable() {
+									@Override
+									public void run() {
+										if (task.getState() == SmartRunnable.CANCELLED) {
+											return;
 										}
-									});
-						}
+										task.run();
+										reschedule(task, SmartExecutor.this.taskQueue);
+									}
+								});
 					} else if (task.isThrottled()) {
 
-						/* run only if this is the latest task in given throttle, otherwise skip execution */
-						if (SmartExecutor.this.throttledTasks.get(task.getThrottleName()) == task) {
-							SmartExecutor.this.executorService.execute(task);
-						}
+						/* let the throttle decide whether to run its pending action or wait longer */
+						task.run();
 					} else {
 						/* tell the executor to just run the action */
 						SmartExecutor.this.executorService.execute(task);
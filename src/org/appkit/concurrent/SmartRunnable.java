@@ -4,32 +4,46 @@ import com.google.common.base.Preconditions;
 
 import java.util.concurrent.Delayed;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 final class SmartRunnable implements Delayed, Runnable {
 
+	//~ Static fields/initializers -------------------------------------------------------------------------------------
+
+	static final int PENDING												   = 0;
+	static final int EXPIRED												   = 1;
+	static final int CANCELLED												   = 2;
+	private static final AtomicIntegerFieldUpdater<SmartRunnable> STATE_UPDATER =
+		AtomicIntegerFieldUpdater.newUpdater(SmartRunnable.class, "state");
+
 	//~ Instance fields ------------------------------------------------------------------------------------------------
 
 	private final Runnable runnable;
-	private final long delay;
-	private final TimeUnit delayUnit;
+	private final long delayNanos;
 	private final boolean isRepeating;
-	private final String throttleName;
+	private final boolean isThrottled;
 
 	/* can be reset before re-schedule */
-	private long endOfDelay;
+	private long deadline;
+	private volatile int state = PENDING;
+
+	/* bookkeeping of the TimingWheelTaskQueue, only accessed by the scheduler-thread */
+	SmartRunnable wheelNext;
+	SmartRunnable wheelPrev;
+	TimingWheelTaskQueue.Bucket wheelBucket;
+	long remainingRounds;
 
 	//~ Constructors ---------------------------------------------------------------------------------------------------
 
 	public SmartRunnable(final Runnable runnable, final long delay, final TimeUnit delayUnit, final boolean repeat,
-						 final String throttleName) {
-		Preconditions.checkArgument(! repeat || (throttleName == null), "either specify repeat or a throttle name");
+						 final boolean throttled) {
+		Preconditions.checkArgument(! (repeat && throttled), "either specify repeat or throttled");
 		this.runnable		  = runnable;
-		this.delay			  = delay;
-		this.delayUnit		  = delayUnit;
+		this.delayNanos		  = delayUnit.toNanos(delay);
 		this.isRepeating	  = repeat;
-		this.throttleName     = throttleName;
+		this.isThrottled	  = throttled;
 
-		this.endOfDelay = delayUnit.toMillis(delay) + System.currentTimeMillis();
+		this.deadline = System.nanoTime() + this.delayNanos;
 	}
 
 	//~ Methods --------------------------------------------------------------------------------------------------------
@@ -39,30 +53,53 @@ final class SmartRunnable implements Delayed, Runnable {
 	}
 
 	public boolean isThrottled() {
-		return this.throttleName != null;
-	}
-
-	public String getThrottleName() {
-		return this.throttleName;
+		return this.isThrottled;
 	}
 
+	/** sets the deadline of a repeating task for its next run, the state is left untouched */
 	public void reset() {
 		Preconditions.checkState(this.isRepeating);
-		this.endOfDelay = delayUnit.toMillis(delay) + System.currentTimeMillis();
+		this.deadline = System.nanoTime() + this.delayNanos;
 	}
 
-	@Override
-	public int compareTo(final Delayed other) {
+	/** prepares the task to be queued again with the given deadline */
+	public void resetTo(final long deadline) {
+		this.deadline     = deadline;
+		this.state		  = PENDING;
+	}
 
-		final Long delay1 = this.getDelay(TimeUnit.MILLISECONDS);
-		final Long delay2 = other.getDelay(TimeUnit.MILLISECONDS);
+	/** the deadline of this task in terms of {@link System#nanoTime()} */
+	public long getDeadline() {
+		return this.deadline;
+	}
+
+	public int getState() {
+		return this.state;
+	}
 
-		return delay1.compareTo(delay2);
+	public boolean compareAndSetState(final int expect, final int update) {
+		return STATE_UPDATER.compareAndSet(this, expect, update);
+	}
+
+	@Override
+	public int compareTo(final Delayed other) {
+		if (other == this) {
+			return 0;
+		}
+
+		final long diff;
+		if (other instanceof SmartRunnable) {
+			diff = this.deadline - ((SmartRunnable) other).deadline;
+		} else {
+			diff = this.getDelay(TimeUnit.NANOSECONDS) - other.getDelay(TimeUnit.NANOSECONDS);
+		}
+
+		return (diff < 0) ? -1 : ((diff > 0) ? 1 : 0);
 	}
 
 	@Override
 	public long getDelay(final TimeUnit unit) {
-		return unit.convert(this.endOfDelay - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+		return unit.convert(this.deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
 	}
 
 	public Runnable getRunnable() {
@@ -73,4 +110,4 @@ final class SmartRunnable implements Delayed, Runnable {
 	public void run() {
 		this.runnable.run();
 	}
-}
\ No newline at end of file
+}
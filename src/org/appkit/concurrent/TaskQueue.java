@@ -0,0 +1,21 @@
+package org.appkit.concurrent;
+
+/**
+ * Queue of {@link SmartRunnable}s ordered by their deadline, as used by the scheduler-thread
+ * of the {@link SmartExecutor}. {@link #put(SmartRunnable)} and {@link #remove(SmartRunnable)} may
+ * be called from any thread, {@link #take()} is only ever called by the single scheduler-thread.
+ *
+ */
+interface TaskQueue {
+
+	//~ Methods --------------------------------------------------------------------------------------------------------
+
+	/** adds a task which will be returned by {@link #take()} once its deadline passed */
+	void put(final SmartRunnable task);
+
+	/** removes a task, which was already set to {@link SmartRunnable#CANCELLED}, from the queue */
+	void remove(final SmartRunnable task);
+
+	/** blocks until the next task is due, sets it to {@link SmartRunnable#EXPIRED} and returns it */
+	SmartRunnable take() throws InterruptedException;
+}
@@ -15,6 +15,7 @@ public interface Throttle {
 	 * Schedules a Runnable to be executed a fixed period of time after it was scheduled.
 	 * If a new Runnable is scheduled on this throttle, it will overwrite Runnables which were
 	 * scheduled before but not yet run. This way only the last Runnable in a series will be executed.
+	 * A series ends when no new Runnable was scheduled for the period of time.
 	 *
 	 */
 	void throttledExecution(final Runnable runnable);
@@ -0,0 +1,217 @@
+package org.appkit.concurrent;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link TaskQueue} implemented as a hashed timing-wheel.
+ * <p>
+ * Time is divided into ticks of a fixed duration, tasks are hashed into the bucket of the tick their deadline falls
+ * into, tasks more than one revolution away carry the number of remaining rounds. Insertion and cancellation are O(1):
+ * both only enqueue the task into a lock-free queue which the scheduler-thread drains on every tick, so callers never
+ * contend on a lock. Deadlines are precise up to one tick.
+ * <p>
+ * While the wheel is empty the scheduler-thread sleeps until a new task arrives instead of ticking.
+ * <p>
+ * This is a single-level hashed wheel, not a hierarchical one with overflow-wheels. The executor's tasks are mostly
+ * throttles and repeating tasks with delays well below one revolution (512 ticks of 10 ms in
+ * {@link SmartExecutor.Scheduling#TIMING_WHEEL}), which a single level handles without cascading tasks between
+ * levels. The price is paid by long delays: every tick walks all tasks of its bucket to count down their rounds, so a
+ * tick costs O(tasks in the bucket) instead of O(expired tasks). A hierarchical wheel would avoid that by cascading,
+ * at the cost of moving each long-delayed task once per level.
+ *
+ */
+final class TimingWheelTaskQueue implements TaskQueue {
+
+	//~ Instance fields ------------------------------------------------------------------------------------------------
+
+	private final long tickNanos;
+	private final Bucket buckets[];
+	private final int mask;
+	private final Queue<SmartRunnable> incoming  = new ConcurrentLinkedQueue<SmartRunnable>();
+	private final Queue<SmartRunnable> cancelled = new ConcurrentLinkedQueue<SmartRunnable>();
+	private final Object idleLock				 = new Object();
+	private volatile boolean idle				 = false;
+
+	/* only accessed by the scheduler-thread */
+	private final Queue<SmartRunnable> expired = new ArrayDeque<SmartRunnable>();
+	private final long startTime			   = System.nanoTime();
+	private long tick						   = 0;
+	private int size						   = 0;
+
+	//~ Constructors ---------------------------------------------------------------------------------------------------
+
+	/**
+	 * @param tickDuration the resolution of the wheel
+	 * @param ticksPerWheel number of buckets, will be rounded up to the next power of two
+	 */
+	public TimingWheelTaskQueue(final long tickDuration, final TimeUnit timeUnit, final int ticksPerWheel) {
+		Preconditions.checkArgument(tickDuration > 0, "tick duration must be positive");
+		Preconditions.checkArgument(
+			(ticksPerWheel > 0) && (ticksPerWheel <= (1 << 30)),
+			"ticks per wheel must be in (0, 2^30]");
+
+		int length = Integer.highestOneBit(ticksPerWheel);
+		if (length < ticksPerWheel) {
+			length = length << 1;
+		}
+
+		this.tickNanos     = timeUnit.toNanos(tickDuration);
+		this.buckets	   = new Bucket[length];
+		this.mask		   = length - 1;
+		for (int i = 0; i < length; i++) {
+			this.buckets[i] = new Bucket();
+		}
+	}
+
+	//~ Methods --------------------------------------------------------------------------------------------------------
+
+	@Override
+	public void put(final SmartRunnable task) {
+		this.incoming.add(task);
+		if (this.idle) {
+			synchronized (this.idleLock) {
+				this.idleLock.notifyAll();
+			}
+		}
+	}
+
+	@Override
+	public void remove(final SmartRunnable task) {
+
+		/* the task is unlinked from its bucket by the scheduler-thread */
+		this.cancelled.add(task);
+	}
+
+	@Override
+	public SmartRunnable take() throws InterruptedException {
+		while (true) {
+
+			SmartRunnable task = this.expired.poll();
+			if (task != null) {
+				return task;
+			}
+
+			/* nothing scheduled: sleep until a task arrives and continue ticking from now on */
+			if ((this.size == 0) && this.incoming.isEmpty()) {
+				this.awaitTask();
+				this.tick = (System.nanoTime() - this.startTime) / this.tickNanos;
+			}
+
+			/* wait for the end of the current tick */
+			long sleepNanos = (this.startTime + ((this.tick + 1) * this.tickNanos)) - System.nanoTime();
+			if (sleepNanos > 0) {
+				TimeUnit.NANOSECONDS.sleep(sleepNanos);
+			}
+
+			this.processCancelled();
+			this.transferIncoming();
+			this.expire(this.buckets[(int) (this.tick & this.mask)]);
+			this.tick++;
+		}
+	}
+
+	private void awaitTask() throws InterruptedException {
+		synchronized (this.idleLock) {
+			this.idle = true;
+			try {
+				while (this.incoming.isEmpty()) {
+					this.idleLock.wait();
+				}
+			} finally {
+				this.idle = false;
+			}
+		}
+	}
+
+	private void transferIncoming() {
+
+		SmartRunnable task;
+		while ((task = this.incoming.poll()) != null) {
+			if (task.getState() != SmartRunnable.PENDING) {
+				continue;
+			}
+
+			long calculated = (task.getDeadline() - this.startTime) / this.tickNanos;
+			task.remainingRounds = (calculated - this.tick) / this.buckets.length;
+
+			/* tasks which are already due go into the current bucket */
+			long ticks = Math.max(calculated, this.tick);
+			this.buckets[(int) (ticks & this.mask)].add(task);
+			this.size++;
+		}
+	}
+
+	private void processCancelled() {
+
+		SmartRunnable task;
+		while ((task = this.cancelled.poll()) != null) {
+
+			Bucket bucket = task.wheelBucket;
+			if (bucket != null) {
+				bucket.remove(task);
+				this.size--;
+			}
+		}
+	}
+
+	private void expire(final Bucket bucket) {
+
+		SmartRunnable task = bucket.head;
+		while (task != null) {
+
+			SmartRunnable next = task.wheelNext;
+			if (task.remainingRounds <= 0) {
+				bucket.remove(task);
+				this.size--;
+				if (task.compareAndSetState(SmartRunnable.PENDING, SmartRunnable.EXPIRED)) {
+					this.expired.add(task);
+				}
+			} else {
+				task.remainingRounds--;
+			}
+			task = next;
+		}
+	}
+
+	//~ Inner Classes --------------------------------------------------------------------------------------------------
+
+	/** doubly-linked list of tasks, the links are stored in the tasks themselves */
+	static final class Bucket {
+
+		private SmartRunnable head;
+		private SmartRunnable tail;
+
+		private void add(final SmartRunnable task) {
+			task.wheelBucket = this;
+			task.wheelPrev   = this.tail;
+			task.wheelNext   = null;
+			if (this.tail == null) {
+				this.head = task;
+			} else {
+				this.tail.wheelNext = task;
+			}
+			this.tail = task;
+		}
+
+		private void remove(final SmartRunnable task) {
+			if (task.wheelPrev == null) {
+				this.head = task.wheelNext;
+			} else {
+				task.wheelPrev.wheelNext = task.wheelNext;
+			}
+			if (task.wheelNext == null) {
+				this.tail = task.wheelPrev;
+			} else {
+				task.wheelNext.wheelPrev = task.wheelPrev;
+			}
+			task.wheelBucket     = null;
+			task.wheelNext		 = null;
+			task.wheelPrev		 = null;
+		}
+	}
+}
@@ -0,0 +1,203 @@
+package org.appkit.concurrent;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.MapMaker;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.swt.SWTException;
+import org.eclipse.swt.widgets.Display;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs Runnables from any thread in the thread of a {@link Display}.
+ * <p>
+ * Instead of one <code>syncExec</code>/<code>asyncExec</code> per call, Runnables are collected in a lock-free queue
+ * and run in batches by a single <code>asyncExec</code>. A batch stops after its time-budget is used up and continues
+ * with the next turn of the event-loop, so long bursts don't starve input-handling.
+ *
+ */
+public final class UIDispatcher {
+
+	//~ Static fields/initializers -------------------------------------------------------------------------------------
+
+	private static final Logger L								   = LoggerFactory.getLogger(UIDispatcher.class);
+	private static final long DEFAULT_BUDGET_MILLIS				   = 20;
+	private static final ConcurrentMap<Display, UIDispatcher> INSTANCES = new MapMaker().weakKeys().makeMap();
+
+	//~ Instance fields ------------------------------------------------------------------------------------------------
+
+	private final Display display;
+	private final Queue<Runnable> queue    = new ConcurrentLinkedQueue<Runnable>();
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+	private final Runnable drain		   = new Drain();
+	private volatile long budgetNanos	   = TimeUnit.MILLISECONDS.toNanos(DEFAULT_BUDGET_MILLIS);
+
+	//~ Constructors ---------------------------------------------------------------------------------------------------
+
+	private UIDispatcher(final Display display) {
+		this.display = display;
+	}
+
+	//~ Methods --------------------------------------------------------------------------------------------------------
+
+	/** returns the dispatcher for the given display */
+	public static UIDispatcher forDisplay(final Display display) {
+		Preconditions.checkNotNull(display);
+
+		UIDispatcher dispatcher = INSTANCES.get(display);
+		if (dispatcher == null) {
+
+			UIDispatcher created = new UIDispatcher(display);
+			dispatcher = INSTANCES.putIfAbsent(display, created);
+			if (dispatcher == null) {
+				dispatcher = created;
+			}
+		}
+
+		return dispatcher;
+	}
+
+	/** sets how long one batch may run before yielding to the event-loop, default is 20 milliseconds */
+	public void setTimeBudget(final long budget, final TimeUnit timeUnit) {
+		Preconditions.checkArgument(budget > 0, "budget must be positive");
+		this.budgetNanos = timeUnit.toNanos(budget);
+	}
+
+	/** queues the Runnable and returns immediately */
+	public void async(final Runnable runnable) {
+		Preconditions.checkNotNull(runnable);
+		this.queue.add(runnable);
+		this.scheduleDrain();
+	}
+
+	/**
+	 * Runs the Runnable and waits for it to finish. It is run directly when called from the display-thread.
+	 * Returns without running it if the display is or gets disposed.
+	 */
+	public void sync(final Runnable runnable) {
+		if (this.display.isDisposed()) {
+			return;
+		}
+		if (this.display.getThread() == Thread.currentThread()) {
+			runnable.run();
+			return;
+		}
+
+		ListenableFuture<Object> future = this.submit(ListenableFutureTask.create(runnable, null));
+		while (! this.display.isDisposed()) {
+			try {
+				Uninterruptibles.getUninterruptibly(future, 100, TimeUnit.MILLISECONDS);
+				return;
+			} catch (final TimeoutException e) {
+				/* check for disposal and continue waiting */
+			} catch (final ExecutionException e) {
+				throw Throwables.propagate(e.getCause());
+			}
+		}
+	}
+
+	/** queues the Callable and returns a future of its result */
+	public <T> ListenableFuture<T> submit(final Callable<T> callable) {
+		return this.submit(ListenableFutureTask.create(callable));
+	}
+
+	/** returns a Runnable which, whenever it is run, queues the given Runnable with {@link #async(Runnable)} */
+	public Runnable wrap(final Runnable runnable) {
+		Preconditions.checkNotNull(runnable);
+		return new Runnable() {
+				@Override
+				public void run() {
+					async(runnable);
+				}
+			};
+	}
+
+	private <T> ListenableFuture<T> submit(final ListenableFutureTask<T> task) {
+		this.queue.add(task);
+		this.scheduleDrain();
+
+		return task;
+	}
+
+	private void scheduleDrain() {
+		if (this.scheduled.compareAndSet(false, true)) {
+			this.postDrain();
+		}
+	}
+
+	/* returns false if the display was disposed, the queued Runnables are never run then */
+	private boolean postDrain() {
+		if (this.display.isDisposed()) {
+			return false;
+		}
+
+		try {
+			this.display.asyncExec(this.drain);
+			return true;
+		} catch (final SWTException e) {
+
+			/* disposed after the check */
+			if (! this.display.isDisposed()) {
+				throw e;
+			}
+			L.debug("display disposed, {} Runnables left unrun", this.queue.size());
+			return false;
+		}
+	}
+
+	//~ Inner Classes --------------------------------------------------------------------------------------------------
+
+	/* runs on the display-thread */
+	private final class Drain implements Runnable {
+		@Override
+		public void run() {
+
+			boolean reposted = false;
+			try {
+
+				long end = System.nanoTime() + budgetNanos;
+				Runnable runnable;
+				while ((runnable = queue.poll()) != null) {
+					try {
+						runnable.run();
+					} catch (final RuntimeException e) {
+						L.error(e.getMessage(), e);
+					}
+
+					/* budget used up: continue with the next turn of the event-loop */
+					if ((System.nanoTime() - end) > 0) {
+						if (! queue.isEmpty()) {
+							reposted = postDrain();
+						}
+						return;
+					}
+				}
+			} finally {
+
+				/* also after an Error, otherwise no drain would ever be posted again */
+				if (! reposted) {
+
+					/* Runnables queued after the last poll would be stranded otherwise */
+					scheduled.set(false);
+					if (! queue.isEmpty() && scheduled.compareAndSet(false, true)) {
+						postDrain();
+					}
+				}
+			}
+		}
+	}
+}
@@ -1,16 +1,23 @@
 package org.appkit.measure;
 
-import com.google.common.base.Function;
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Multimap;
-import com.google.common.collect.Multimaps;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
 
-import java.util.Collection;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * a {@link Measurement.Listener} which outputs the start and end of every measurement, together with the share each
+ * nested measurement had in the duration of its parent.
+ * <p>
+ * Durations of nested measurements are summed up per nesting level while they finish, nothing is buffered.
+ * Additionally the self-time of every call-path is collected, see {@link #getCollapsedStacks()}.
+ *
+ */
 public abstract class CallTimeLogger implements Measurement.Listener {
 
 	//~ Static fields/initializers -------------------------------------------------------------------------------------
@@ -20,8 +27,14 @@ public abstract class CallTimeLogger implements Measurement.Listener {
 
 	//~ Instance fields ------------------------------------------------------------------------------------------------
 
-	private int nestingLevel							  = 0;
-	private final Multimap<Integer, Measurement> finished = HashMultimap.create();
+	private final Node root							  = new Node();
+	private final ThreadLocal<CallStack> callStacks =
+		new ThreadLocal<CallStack>() {
+			@Override
+			protected CallStack initialValue() {
+				return new CallStack();
+			}
+		};
 
 	//~ Methods --------------------------------------------------------------------------------------------------------
 
@@ -29,68 +42,193 @@ public abstract class CallTimeLogger implements Measurement.Listener {
 
 	@Override
 	public final void notifyStart(final Measurement m) {
-		this.nestingLevel++;
-		this.output("'" + m.getName() + "' started");
+		this.output(new StringBuilder().append('\'').append(m.getName()).append("' started").toString());
+
+		/* recorded measurements don't take part in the nesting */
+		if (m.isRecorded()) {
+			return;
+		}
+
+		CallStack stack = this.callStacks.get();
+		Node parent     = (m.getDepth() == 0) ? null : stack.frame(m.getDepth() - 1).node;
+		stack.frame(m.getDepth()).reset(((parent == null) ? this.root : parent).child(m.getName()));
 	}
 
 	@Override
 	public final void notifyData(final Measurement data) {
 
-		String str = "'" + data.getName() + "' finished: " + data.getDuration() + " ms";
-
-		if (this.finished.containsKey(nestingLevel)) {
-			str = str + " (";
-
-			/* get submeasurements */
-			Collection<Measurement> subs				 = this.finished.removeAll(this.nestingLevel);
-			final Multimap<String, Measurement> combined =
-				Multimaps.index(
-					subs,
-					new Function<Measurement, String>() {
-							@Override
-							public String apply(final Measurement md) {
-								return md.getName();
-							}
-						});
-
-			Iterable<String> namesByDuration =
-				Ordering.natural().onResultOf(
-					new Function<String, Long>() {
-							@Override
-							public Long apply(final String name) {
-
-								long dur     = 0;
-								for (final Measurement md : combined.get(name)) {
-									dur = dur + md.getDuration();
-								}
-								return dur;
-							}
-						}).sortedCopy(combined.keySet());
-
-			StringBuilder sb = new StringBuilder();
-			for (final String name : namesByDuration) {
-
-				long dur = 0;
-				for (final Measurement md : combined.get(name)) {
-					dur = dur + md.getDuration();
-				}
+		long duration    = data.getDurationNanos();
+		StringBuilder sb = new StringBuilder();
+		sb.append('\'').append(data.getName()).append("' finished: ").append(data.getDuration()).append(" ms");
+
+		/* a recorded measurement has no sub-measurements and is a call-path of its own */
+		if (data.isRecorded()) {
+			this.output(sb.toString());
+			this.root.child(data.getName()).selfNanos.addAndGet(duration);
+			return;
+		}
+
+		CallStack stack = this.callStacks.get();
+		Frame frame     = stack.frame(data.getDepth());
 
-				if (sb.length() > 0) {
+		if (frame.size > 0) {
+			sb.append(" (");
+
+			/* sub-measurements, shortest first */
+			frame.sortByDuration();
+			for (int i = 0; i < frame.size; i++) {
+
+				int idx = frame.order[i];
+				if (i > 0) {
 					sb.append(", ");
 				}
-				sb.append("'" + name + "': ");
-				sb.append(Long.toString((dur * 100) / data.getDuration()));
-				sb.append("%");
+				sb.append('\'').append(frame.names[idx]).append("': ");
+				sb.append((frame.nanos[idx] * 100) / Math.max(1, duration));
+				sb.append('%');
 			}
-			str     = str + sb.toString();
-			str     = str + ")";
+			sb.append(')');
+		}
+
+		this.output(sb.toString());
+
+		if (frame.node != null) {
+			frame.node.selfNanos.addAndGet(Math.max(0, duration - frame.childNanos));
+		}
+		if (data.getDepth() > 0) {
+			stack.frame(data.getDepth() - 1).add(data.getName(), duration);
+		}
+		frame.reset(null);
+	}
+
+	/**
+	 * Returns the self-time of every call-path in the collapsed-stack format used by flame-graph tools: one line per
+	 * path, names separated by semicolons, followed by the time in microseconds.
+	 */
+	public String getCollapsedStacks() {
+
+		StringBuilder sb = new StringBuilder();
+		for (final String name : Ordering.natural().sortedCopy(this.root.children.keySet())) {
+			this.appendCollapsed(sb, new StringBuilder(name), this.root.children.get(name));
+		}
+
+		return sb.toString();
+	}
+
+	private void appendCollapsed(final StringBuilder sb, final StringBuilder path, final Node node) {
+
+		long micros = TimeUnit.NANOSECONDS.toMicros(node.selfNanos.get());
+		if (micros > 0) {
+			sb.append(path).append(' ').append(micros).append('\n');
 		}
 
-		this.output(str);
+		for (final String name : Ordering.natural().sortedCopy(node.children.keySet())) {
+
+			int length = path.length();
+			path.append(';').append(name);
+			this.appendCollapsed(sb, path, node.children.get(name));
+			path.setLength(length);
+		}
+	}
+
+	//~ Inner Classes --------------------------------------------------------------------------------------------------
+
+	/** node of the call-tree, shared by all threads */
+	private static final class Node {
+
+		private final ConcurrentMap<String, Node> children = Maps.newConcurrentMap();
+		private final AtomicLong selfNanos				    = new AtomicLong();
+
+		private Node child(final String name) {
 
-		this.nestingLevel--;
-		if (this.nestingLevel > 0) {
-			this.finished.put(this.nestingLevel, data);
+			Node child = this.children.get(name);
+			if (child == null) {
+
+				Node created = new Node();
+				child = this.children.putIfAbsent(name, created);
+				if (child == null) {
+					child = created;
+				}
+			}
+
+			return child;
+		}
+	}
+
+	/** the frames of a thread, one per nesting level */
+	private static final class CallStack {
+
+		private Frame frames[] = new Frame[8];
+
+		private Frame frame(final int depth) {
+			if (depth >= this.frames.length) {
+
+				Frame grown[] = new Frame[Math.max(depth + 1, this.frames.length * 2)];
+				System.arraycopy(this.frames, 0, grown, 0, this.frames.length);
+				this.frames = grown;
+			}
+			if (this.frames[depth] == null) {
+				this.frames[depth] = new Frame();
+			}
+
+			return this.frames[depth];
+		}
+	}
+
+	/** a running measurement and the summed up durations of its finished sub-measurements by name */
+	private static final class Frame {
+
+		private Node node;
+		private String names[] = new String[4];
+		private long nanos[]   = new long[4];
+		private int order[]    = new int[4];
+		private int size	   = 0;
+		private long childNanos;
+
+		private void reset(final Node node) {
+			this.node		    = node;
+			this.childNanos     = 0;
+			for (int i = 0; i < this.size; i++) {
+				this.names[i] = null;
+			}
+			this.size = 0;
+		}
+
+		private void add(final String name, final long duration) {
+			this.childNanos = this.childNanos + duration;
+			for (int i = 0; i < this.size; i++) {
+				if (this.names[i].equals(name)) {
+					this.nanos[i] = this.nanos[i] + duration;
+					return;
+				}
+			}
+
+			if (this.size == this.names.length) {
+
+				String grownNames[] = new String[this.size * 2];
+				long grownNanos[]   = new long[this.size * 2];
+				System.arraycopy(this.names, 0, grownNames, 0, this.size);
+				System.arraycopy(this.nanos, 0, grownNanos, 0, this.size);
+				this.names     = grownNames;
+				this.nanos     = grownNanos;
+				this.order     = new int[this.size * 2];
+			}
+			this.names[this.size]     = name;
+			this.nanos[this.size]     = duration;
+			this.size++;
+		}
+
+		/* insertion-sort of the indices, there are only a few sub-measurements */
+		private void sortByDuration() {
+			for (int i = 0; i < this.size; i++) {
+
+				int idx = i;
+				int j   = i - 1;
+				while ((j >= 0) && (this.nanos[this.order[j]] > this.nanos[idx])) {
+					this.order[j + 1] = this.order[j];
+					j--;
+				}
+				this.order[j + 1] = idx;
+			}
 		}
 	}
-}
\ No newline at end of file
+}
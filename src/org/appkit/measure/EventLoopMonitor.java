@@ -0,0 +1,152 @@
+package org.appkit.measure;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.appkit.concurrent.LoggingThreadFactory;
+
+import org.eclipse.swt.SWTException;
+import org.eclipse.swt.widgets.Display;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches the event-loop of a {@link Display} for stalls.
+ * <p>
+ * A watchdog-thread periodically posts a heartbeat with <code>asyncExec</code> and measures how long it takes until
+ * the display-thread runs it. Latencies are recorded into a {@link Histogram} and reported as a {@link Measurement}
+ * named {@value #MEASUREMENT_NAME}. If a heartbeat is pending for longer than the stall-threshold, the stack of the
+ * display-thread is captured and logged; it is attached as data to the measurement of that heartbeat.
+ * <p>
+ * The heartbeat only notes when it was dispatched. The watchdog records the latency and the measurement once the
+ * heartbeat is done, so the display-thread never reads anything the watchdog writes after posting it.
+ *
+ */
+public final class EventLoopMonitor {
+
+	//~ Static fields/initializers -------------------------------------------------------------------------------------
+
+	public static final String MEASUREMENT_NAME = "swt.event-loop-latency";
+	private static final Logger L			    = LoggerFactory.getLogger(EventLoopMonitor.class);
+
+	//~ Instance fields ------------------------------------------------------------------------------------------------
+
+	private final Display display;
+	private final long intervalNanos;
+	private final long thresholdNanos;
+	private final Histogram latencies = new Histogram();
+	private final AtomicLong stalls   = new AtomicLong();
+	private final Thread watchdog;
+	private volatile boolean stopped  = false;
+
+	//~ Constructors ---------------------------------------------------------------------------------------------------
+
+	private EventLoopMonitor(final Display display, final long interval, final long stallThreshold,
+							 final TimeUnit timeUnit) {
+		this.display		    = display;
+		this.intervalNanos	    = timeUnit.toNanos(interval);
+		this.thresholdNanos     = timeUnit.toNanos(stallThreshold);
+		this.watchdog		    = LoggingThreadFactory.create().newThread(new Watchdog());
+		this.watchdog.setName("EventLoopMonitor");
+		this.watchdog.setDaemon(true);
+	}
+
+	//~ Methods --------------------------------------------------------------------------------------------------------
+
+	/**
+	 * starts monitoring the given display
+	 *
+	 * @param interval time between two heartbeats
+	 * @param stallThreshold latency from which on the display-thread is considered stalled
+	 */
+	public static EventLoopMonitor start(final Display display, final long interval, final long stallThreshold,
+										 final TimeUnit timeUnit) {
+		Preconditions.checkNotNull(display);
+		Preconditions.checkArgument(interval > 0, "interval must be positive");
+		Preconditions.checkArgument(stallThreshold > 0, "stall threshold must be positive");
+
+		EventLoopMonitor monitor = new EventLoopMonitor(display, interval, stallThreshold, timeUnit);
+		monitor.watchdog.start();
+
+		return monitor;
+	}
+
+	/** stops monitoring, it stops by itself once the display is disposed */
+	public void stop() {
+		this.stopped = true;
+		this.watchdog.interrupt();
+	}
+
+	/** returns a copy of the dispatch-latencies recorded so far, in nanoseconds */
+	public Histogram getLatencies() {
+		return this.latencies.copy();
+	}
+
+	/** returns how many heartbeats exceeded the stall-threshold */
+	public long getStallCount() {
+		return this.stalls.get();
+	}
+
+	//~ Inner Classes --------------------------------------------------------------------------------------------------
+
+	private static final class Heartbeat implements Runnable {
+
+		private final long posted		   = System.nanoTime();
+		private final CountDownLatch done = new CountDownLatch(1);
+		private long dispatched;
+
+		/* dispatched is read after done was counted down, the latch publishes it */
+		@Override
+		public void run() {
+			this.dispatched = System.nanoTime();
+			this.done.countDown();
+		}
+	}
+
+	private final class Watchdog implements Runnable {
+		@Override
+		public void run() {
+			try {
+				while (! stopped && ! display.isDisposed()) {
+
+					Heartbeat heartbeat = new Heartbeat();
+					display.asyncExec(heartbeat);
+
+					/* wait for the heartbeat, capture the stack if it takes too long */
+					String stack = null;
+					if (! heartbeat.done.await(thresholdNanos, TimeUnit.NANOSECONDS)) {
+
+						long waited   = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - heartbeat.posted);
+						Thread thread = display.getThread();
+						stack = Joiner.on("\n\tat ").join(Arrays.asList(thread.getStackTrace()));
+						stalls.incrementAndGet();
+						L.warn("display-thread stalled for {} ms:\n\tat {}", waited, stack);
+
+						while (! heartbeat.done.await(intervalNanos, TimeUnit.NANOSECONDS)) {
+							if (stopped || display.isDisposed()) {
+								return;
+							}
+						}
+					}
+					latencies.record(heartbeat.dispatched - heartbeat.posted);
+					Measurement.record(true, MEASUREMENT_NAME, stack, heartbeat.posted, heartbeat.dispatched);
+
+					long sleep = (heartbeat.posted + intervalNanos) - System.nanoTime();
+					if (sleep > 0) {
+						TimeUnit.NANOSECONDS.sleep(sleep);
+					}
+				}
+			} catch (final InterruptedException e) {
+				L.debug("watchdog interrupted (stopping)");
+			} catch (final SWTException e) {
+				L.debug("display was disposed (stopping)");
+			}
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package org.appkit.measure;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non-negative long values (usually durations in nanoseconds) with a fixed memory footprint.
+ * <p>
+ * Values are counted in log-linear buckets: every power of two is divided into 32 buckets, so values are kept with a
+ * relative error of about 3%, values below 64 exactly. Count, sum, minimum and maximum are exact. Recording is
+ * thread-safe and lock-free.
+ *
+ */
+public final class Histogram {
+
+	//~ Static fields/initializers -------------------------------------------------------------------------------------
+
+	private static final int SUB_BUCKET_BITS  = 5;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKET_COUNT     = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+	//~ Instance fields ------------------------------------------------------------------------------------------------
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong count	    = new AtomicLong();
+	private final AtomicLong sum		    = new AtomicLong();
+	private final AtomicLong min		    = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong max		    = new AtomicLong(Long.MIN_VALUE);
+
+	//~ Methods --------------------------------------------------------------------------------------------------------
+
+	/** records a value */
+	public void record(final long value) {
+		Preconditions.checkArgument(value >= 0, "value must not be negative");
+
+		this.counts.incrementAndGet(index(value));
+		this.count.incrementAndGet();
+		this.sum.addAndGet(value);
+
+		long current;
+		while ((value < (current = this.min.get())) && ! this.min.compareAndSet(current, value)) {}
+		while ((value > (current = this.max.get())) && ! this.max.compareAndSet(current, value)) {}
+	}
+
+	/** returns a copy of the histogram */
+	public Histogram copy() {
+
+		Histogram copy = new Histogram();
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			copy.counts.set(i, this.counts.get(i));
+		}
+		copy.count.set(this.count.get());
+		copy.sum.set(this.sum.get());
+		copy.min.set(this.min.get());
+		copy.max.set(this.max.get());
+
+		return copy;
+	}
+
+	public long getCount() {
+		return this.count.get();
+	}
+
+	/** returns the smallest recorded value or 0 if the histogram is empty */
+	public long getMin() {
+		return (this.count.get() == 0) ? 0 : this.min.get();
+	}
+
+	/** returns the largest recorded value or 0 if the histogram is empty */
+	public long getMax() {
+		return (this.count.get() == 0) ? 0 : this.max.get();
+	}
+
+	/** returns the average of all values or 0 if the histogram is empty */
+	public double getMean() {
+
+		long n = this.count.get();
+		return (n == 0) ? 0 : ((double) this.sum.get() / n);
+	}
+
+	/**
+	 * returns the value below or at which the given percentage of all values lies
+	 *
+	 * @param percentile in the range of [0, 100]
+	 */
+	public long getValueAtPercentile(final double percentile) {
+		Preconditions.checkArgument((percentile >= 0) && (percentile <= 100), "percentile must be in [0, 100]");
+
+		long total = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			total = total + this.counts.get(i);
+		}
+		if (total == 0) {
+			return 0;
+		}
+
+		long target = Math.max(1, (long) Math.ceil((percentile / 100) * total));
+		long seen   = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen = seen + this.counts.get(i);
+			if (seen >= target) {
+				return Math.min(highestValue(i), this.getMax());
+			}
+		}
+
+		return this.getMax();
+	}
+
+	private static int index(final long value) {
+		if (value < (SUB_BUCKET_COUNT << 1)) {
+			return (int) value;
+		}
+
+		int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+		return (shift * SUB_BUCKET_COUNT) + (int) (value >>> shift);
+	}
+
+	private static long highestValue(final int index) {
+		if (index < (SUB_BUCKET_COUNT << 1)) {
+			return index;
+		}
+
+		int shift = (index / SUB_BUCKET_COUNT) - 1;
+		long sub  = index - (shift * SUB_BUCKET_COUNT);
+		return ((sub + 1) << shift) - 1;
+	}
+}
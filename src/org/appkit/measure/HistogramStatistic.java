@@ -0,0 +1,127 @@
+package org.appkit.measure;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+
+import java.text.DecimalFormat;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * a {@link Measurement.Listener} which records the durations of measurements into a {@link Histogram} per name.
+ * Memory use is constant per name, no matter how many measurements are taken.
+ * <p>
+ * {@link #snapshotAndReset()} allows reporting in intervals. Measurements finishing while the reset happens may be
+ * counted in either interval.
+ *
+ */
+public class HistogramStatistic implements Measurement.Listener {
+
+	//~ Static fields/initializers -------------------------------------------------------------------------------------
+
+	@SuppressWarnings("unused")
+	private static final Logger L							 = LoggerFactory.getLogger(HistogramStatistic.class);
+	private static final int COLSIZE						 = 12;
+	private static final DecimalFormat decFormat			 = new DecimalFormat("0.000");
+	private static final double NANOS_PER_MILLI			 = 1000000d;
+
+	//~ Instance fields ------------------------------------------------------------------------------------------------
+
+	private final ConcurrentMap<String, AtomicReference<Histogram>> histograms = Maps.newConcurrentMap();
+
+	//~ Methods --------------------------------------------------------------------------------------------------------
+
+	@Override
+	public void notifyStart(final Measurement m) {}
+
+	@Override
+	public void notifyData(final Measurement mData) {
+
+		AtomicReference<Histogram> ref = this.histograms.get(mData.getName());
+		if (ref == null) {
+
+			AtomicReference<Histogram> created = new AtomicReference<Histogram>(new Histogram());
+			ref = this.histograms.putIfAbsent(mData.getName(), created);
+			if (ref == null) {
+				ref = created;
+			}
+		}
+		ref.get().record(mData.getDurationNanos());
+	}
+
+	/** returns a copy of the histograms of all names, durations are in nanoseconds */
+	public ImmutableSortedMap<String, Histogram> snapshot() {
+
+		ImmutableSortedMap.Builder<String, Histogram> snapshot = ImmutableSortedMap.naturalOrder();
+		for (final Entry<String, AtomicReference<Histogram>> entry : this.histograms.entrySet()) {
+			snapshot.put(entry.getKey(), entry.getValue().get().copy());
+		}
+
+		return snapshot.build();
+	}
+
+	/** returns the histograms of all names and starts new ones, durations are in nanoseconds */
+	public ImmutableSortedMap<String, Histogram> snapshotAndReset() {
+
+		ImmutableSortedMap.Builder<String, Histogram> snapshot = ImmutableSortedMap.naturalOrder();
+		for (final Entry<String, AtomicReference<Histogram>> entry : this.histograms.entrySet()) {
+			snapshot.put(entry.getKey(), entry.getValue().getAndSet(new Histogram()));
+		}
+
+		return snapshot.build();
+	}
+
+	/** returns a table of count, min, avg, max and percentiles per name in milliseconds */
+	public String getResults() {
+		return format(this.snapshot());
+	}
+
+	/** formats the given histograms as a table, like {@link #getResults()} */
+	public static String format(final Map<String, Histogram> histograms) {
+
+		int maxNameLength = 0;
+		for (final String name : histograms.keySet()) {
+			maxNameLength = Math.max(maxNameLength, name.length());
+		}
+
+		int col1size = maxNameLength + 3;
+
+		StringBuilder sb = new StringBuilder();
+		sb.append(Strings.padStart("", col1size, ' '));
+		for (final String col : new String[] { "count", "min", "avg", "p50", "p90", "p99", "p999", "max" }) {
+			sb.append(Strings.padStart(col, COLSIZE, ' '));
+		}
+		sb.append("\n");
+
+		for (final String name : Ordering.natural().sortedCopy(histograms.keySet())) {
+
+			Histogram h = histograms.get(name);
+			sb.append(Strings.padEnd(name + ":", col1size, ' '));
+			sb.append(Strings.padStart(Long.toString(h.getCount()), COLSIZE, ' '));
+			appendMillis(sb, h.getMin());
+			appendMillis(sb, h.getMean());
+			appendMillis(sb, h.getValueAtPercentile(50));
+			appendMillis(sb, h.getValueAtPercentile(90));
+			appendMillis(sb, h.getValueAtPercentile(99));
+			appendMillis(sb, h.getValueAtPercentile(99.9));
+			appendMillis(sb, h.getMax());
+			sb.append("\n");
+		}
+
+		return sb.toString();
+	}
+
+	private static void appendMillis(final StringBuilder sb, final double nanos) {
+		synchronized (decFormat) {
+			sb.append(Strings.padStart(decFormat.format(nanos / NANOS_PER_MILLI), COLSIZE, ' '));
+		}
+	}
+}
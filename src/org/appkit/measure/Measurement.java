@@ -1,39 +1,53 @@
 package org.appkit.measure;
 
 import com.google.common.base.Preconditions;
-import com.google.common.base.Stopwatch;
-import com.google.common.collect.Lists;
 
-import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * This class takes care of starting, stopping and keeping track of measurements. Measurements can be nested,
- * the internal state is managed using {@link ThreadLocal} variables.
+ * the internal state is managed using {@link ThreadLocal} variables, so every thread has its own stack of
+ * running measurements and threads never wait for each other.
  *
  * Every method has a boolean switch to turn off measurement, so that it can be kept in the code
  * and turned off for performance reasons.
  *
+ * Measurements are timed using {@link System#nanoTime()}. The Measurement objects are pooled per thread and
+ * reused, so measuring doesn't allocate once the pool is warmed up. A Measurement passed to a {@link Listener} or
+ * returned by {@link #stop()} is only valid until the next Measurement is started in the same thread, use
+ * {@link #copy()} to keep it.
+ *
  */
 public final class Measurement {
 
 	//~ Static fields/initializers -------------------------------------------------------------------------------------
 
-	private static final Deque<Measurement> runningMeasurements = Lists.newLinkedList();
-	private static Measurement.Listener listener			    = null;
+	private static final Listener[] NO_LISTENERS					   = new Listener[0];
+	private static final ThreadLocal<Stack> runningMeasurements =
+		new ThreadLocal<Stack>() {
+			@Override
+			protected Stack initialValue() {
+				return new Stack();
+			}
+		};
+
+	/* copy-on-write, so notifying doesn't need a lock */
+	private static final AtomicReference<Listener[]> listeners = new AtomicReference<Listener[]>(NO_LISTENERS);
 
 	//~ Instance fields ------------------------------------------------------------------------------------------------
 
-	private final String name;
-	private final Object data;
+	private String name;
+	private Object data;
+	private int depth;
 	private long start;
-	private Stopwatch watch;
+	private long end;
+	private boolean running;
+	private boolean recorded;
 
 	//~ Constructors ---------------------------------------------------------------------------------------------------
 
-	private Measurement(final String name, final Object data) {
-		this.name     = name;
-		this.data     = data;
-	}
+	private Measurement() {}
 
 	//~ Methods --------------------------------------------------------------------------------------------------------
 
@@ -45,40 +59,109 @@ public final class Measurement {
 		return data;
 	}
 
+	/** returns the nesting depth of this measurement within its thread, 0 for the outermost */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * returns true if this measurement was timed elsewhere and passed to
+	 * {@link #record(boolean, String, Object, long, long)}. It isn't nested into the running measurements of its
+	 * thread, its depth is always 0.
+	 */
+	public boolean isRecorded() {
+		return recorded;
+	}
+
+	/** returns the start of this measurement in terms of {@link System#nanoTime()} */
 	public long getStart() {
-		Preconditions.checkState(this.watch != null, "Measurement has not been started yet");
 		return start;
 	}
 
+	/** returns the duration in milliseconds, but at least 1 */
 	public long getDuration() {
-		Preconditions.checkState(this.watch != null, "Measurement has not been stopped yet");
-		if (this.watch.elapsedMillis() != 0) {
-			return this.watch.elapsedMillis();
-		} else {
-			return 1;
-		}
+		return Math.max(1, TimeUnit.NANOSECONDS.toMillis(this.getDurationNanos()));
+	}
+
+	/** returns the duration in nanoseconds */
+	public long getDurationNanos() {
+		Preconditions.checkState(! this.running, "Measurement has not been stopped yet");
+		return this.end - this.start;
 	}
 
-	public void start() {
-		Preconditions.checkState(this.watch == null, "Measurement has been started already");
-		this.watch     = new Stopwatch();
-		this.start     = System.nanoTime();
-		this.watch.start();
+	/** returns a copy of this finished measurement which isn't reused */
+	public Measurement copy() {
+		Preconditions.checkState(! this.running, "Measurement has not been stopped yet");
+
+		Measurement copy = new Measurement();
+		copy.name	     = this.name;
+		copy.data	     = this.data;
+		copy.depth	     = this.depth;
+		copy.start	     = this.start;
+		copy.end		 = this.end;
+		copy.recorded    = this.recorded;
+
+		return copy;
 	}
 
-	public void end() {
-		Preconditions.checkState(this.watch.isRunning(), "Measurement has been stopped already");
-		this.watch.stop();
+	@Override
+	public String toString() {
+		return "{" + this.name + ": " + (this.running ? "running" : (this.getDurationNanos() + " ns")) + "}";
 	}
 
 	/**
-	 * Sets a {@link Measurement.Listener} to be notified of a new measurement. It needs
-	 * to be thread-safe, if Measurements occur over more than one thread.
+	 * Sets a {@link Measurement.Listener} to be notified of a new measurement, replacing all registered listeners.
+	 * It needs to be thread-safe, if Measurements occur over more than one thread.
 	 *
 	 * @see SimpleStatistic
 	 */
-	public static synchronized void setListener(final Measurement.Listener newListener) {
-		listener = newListener;
+	public static void setListener(final Measurement.Listener newListener) {
+		listeners.set((newListener == null) ? NO_LISTENERS : new Listener[] { newListener });
+	}
+
+	/**
+	 * Registers an additional {@link Measurement.Listener}. It needs to be thread-safe, if Measurements
+	 * occur over more than one thread.
+	 */
+	public static void addListener(final Measurement.Listener newListener) {
+		Preconditions.checkNotNull(newListener);
+		while (true) {
+
+			Listener[] current = listeners.get();
+			Listener[] updated = new Listener[current.length + 1];
+			System.arraycopy(current, 0, updated, 0, current.length);
+			updated[current.length] = newListener;
+
+			if (listeners.compareAndSet(current, updated)) {
+				return;
+			}
+		}
+	}
+
+	/** Unregisters a {@link Measurement.Listener} */
+	public static void removeListener(final Measurement.Listener oldListener) {
+		while (true) {
+
+			Listener[] current = listeners.get();
+			int idx			   = -1;
+			for (int i = 0; i < current.length; i++) {
+				if (current[i] == oldListener) {
+					idx = i;
+					break;
+				}
+			}
+			if (idx == -1) {
+				return;
+			}
+
+			Listener[] updated = (current.length == 1) ? NO_LISTENERS : new Listener[current.length - 1];
+			System.arraycopy(current, 0, updated, 0, idx);
+			System.arraycopy(current, idx + 1, updated, idx, current.length - idx - 1);
+
+			if (listeners.compareAndSet(current, updated)) {
+				return;
+			}
+		}
 	}
 
 	/**
@@ -87,7 +170,7 @@ public final class Measurement {
 	 * @param doIt actually do the measurement
 	 * @param name name of the measurement
 	 */
-	public static synchronized void start(final boolean doIt, final String name) {
+	public static void start(final boolean doIt, final String name) {
 		start(doIt, name, null);
 	}
 
@@ -97,33 +180,86 @@ public final class Measurement {
 	 * @param doIt actually do the measurement
 	 * @param name name of the measurement
 	 */
-	public static synchronized void start(final boolean doIt, final String name, final Object data) {
+	public static void start(final boolean doIt, final String name, final Object data) {
+		if (! doIt) {
+			return;
+		}
+
+		Stack stack		 = runningMeasurements.get();
+		Measurement newM = stack.push();
+		newM.name	     = name;
+		newM.data	     = data;
+		newM.running     = true;
+		newM.start	     = System.nanoTime();
+
+		for (final Listener listener : listeners.get()) {
+			listener.notifyStart(newM);
+		}
+	}
+
+	/**
+	 * records a measurement which was timed elsewhere, listeners are notified of its start and end at once. It
+	 * isn't nested into the measurements running in this thread, see {@link #isRecorded()}.
+	 *
+	 * @param doIt actually do the measurement
+	 * @param name name of the measurement
+	 * @param start start in terms of {@link System#nanoTime()}
+	 * @param end end in terms of {@link System#nanoTime()}
+	 */
+	public static void record(final boolean doIt, final String name, final Object data, final long start,
+							  final long end) {
 		if (! doIt) {
 			return;
 		}
 
-		Measurement newM = new Measurement(name, data);
-		newM.start();
-		runningMeasurements.addFirst(newM);
+		/* the running measurements stay untouched */
+		Measurement newM = runningMeasurements.get().recorded;
+		newM.name	     = name;
+		newM.data	     = data;
+		newM.running     = true;
+		newM.start	     = start;
 
-		if (listener != null) {
+		Listener[] current = listeners.get();
+		for (final Listener listener : current) {
 			listener.notifyStart(newM);
 		}
+
+		newM.end		 = end;
+		newM.running     = false;
+		for (final Listener listener : current) {
+			listener.notifyData(newM);
+		}
 	}
 
 	/**
-	 * stops the currently running measurement = the last that was started
+	 * stops the currently running measurement = the last that was started in this thread
 	 *
 	 * @return the finished measurement
 	 */
-	public static synchronized Measurement stop() {
-		if (runningMeasurements.isEmpty()) {
+	public static Measurement stop() {
+		return stop(true);
+	}
+
+	/**
+	 * stops the currently running measurement = the last that was started in this thread
+	 *
+	 * @param doIt actually stop the measurement, pass the same value as to the matching start
+	 * @return the finished measurement
+	 */
+	public static Measurement stop(final boolean doIt) {
+		if (! doIt) {
+			return null;
+		}
+
+		long end	   = System.nanoTime();
+		Measurement md = runningMeasurements.get().pop();
+		if (md == null) {
 			return null;
 		}
 
-		Measurement md = runningMeasurements.removeFirst();
-		md.end();
-		if (listener != null) {
+		md.end		   = end;
+		md.running     = false;
+		for (final Listener listener : listeners.get()) {
 			listener.notifyData(md);
 		}
 
@@ -132,6 +268,7 @@ public final class Measurement {
 
 	//~ Inner Interfaces -----------------------------------------------------------------------------------------------
 
+	/** Listeners are notified in the thread which started or stopped the Measurement. */
 	public static interface Listener {
 
 		/**
@@ -145,4 +282,48 @@ public final class Measurement {
 		 */
 		void notifyData(final Measurement data);
 	}
-}
\ No newline at end of file
+
+	//~ Inner Classes --------------------------------------------------------------------------------------------------
+
+	/** stack of running measurements of a thread, the Measurement objects are kept for reuse */
+	private static final class Stack {
+
+		private Measurement slots[] = new Measurement[8];
+		private int size		    = 0;
+
+		/* reused by record */
+		private final Measurement recorded = new Measurement();
+
+		private Stack() {
+			this.recorded.recorded = true;
+		}
+
+		private Measurement push() {
+			if (this.size == this.slots.length) {
+
+				Measurement grown[] = new Measurement[this.slots.length * 2];
+				System.arraycopy(this.slots, 0, grown, 0, this.size);
+				this.slots = grown;
+			}
+
+			Measurement m = this.slots[this.size];
+			if (m == null) {
+				m						 = new Measurement();
+				this.slots[this.size] = m;
+			}
+			m.depth = this.size;
+			this.size++;
+
+			return m;
+		}
+
+		private Measurement pop() {
+			if (this.size == 0) {
+				return null;
+			}
+			this.size--;
+
+			return this.slots[this.size];
+		}
+	}
+}
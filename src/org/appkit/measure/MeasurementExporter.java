@@ -0,0 +1,159 @@
+package org.appkit.measure;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSortedMap;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Exports measurements for production profiling, without changes to the measured code.
+ * <p>
+ * Finished measurements are collected into a {@link Histogram} per name, which can be pulled with
+ * {@link #snapshot()} or over JMX after {@link #registerMBean(String)}. Optionally every measurement is also published
+ * as a JDK Flight Recorder event (<code>org.appkit.Measurement</code>, with name, data and nesting depth, the thread
+ * is recorded by the flight recorder), so it can be correlated with GC-pauses and thread-scheduling.
+ *
+ */
+public final class MeasurementExporter implements Measurement.Listener, MeasurementExporterMBean {
+
+	//~ Static fields/initializers -------------------------------------------------------------------------------------
+
+	private static final Logger L					 = LoggerFactory.getLogger(MeasurementExporter.class);
+	private static final String FLIGHT_RECORDER_SINK = "org.appkit.measure.FlightRecorderSink";
+
+	//~ Instance fields ------------------------------------------------------------------------------------------------
+
+	private final HistogramStatistic statistic = new HistogramStatistic();
+	private final Measurement.Listener flightRecorder;
+	private ObjectName objectName;
+
+	//~ Constructors ---------------------------------------------------------------------------------------------------
+
+	private MeasurementExporter(final Measurement.Listener flightRecorder) {
+		this.flightRecorder = flightRecorder;
+	}
+
+	//~ Methods --------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Creates an exporter and registers it with {@link Measurement#addListener(Measurement.Listener)}.
+	 *
+	 * @param flightRecorder publish flight recorder events, ignored if the JVM doesn't have a flight recorder
+	 */
+	public static MeasurementExporter install(final boolean flightRecorder) {
+
+		Measurement.Listener sink = null;
+		if (flightRecorder) {
+			sink = createFlightRecorderSink();
+			if (sink == null) {
+				L.warn("flight recorder isn't available in this JVM or the sink wasn't built");
+			}
+		}
+
+		MeasurementExporter exporter = new MeasurementExporter(sink);
+		Measurement.addListener(exporter);
+
+		return exporter;
+	}
+
+	/* the sink is compiled separately for Java 11, so it's only referenced by name */
+	private static Measurement.Listener createFlightRecorderSink() {
+		try {
+			Class.forName("jdk.jfr.Event");
+			return (Measurement.Listener) Class.forName(FLIGHT_RECORDER_SINK).getDeclaredConstructor().newInstance();
+		} catch (final ClassNotFoundException e) {
+			return null;
+		} catch (final LinkageError e) {
+			return null;
+		} catch (final InstantiationException e) {
+			throw new IllegalStateException(e);
+		} catch (final IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		} catch (final NoSuchMethodException e) {
+			throw new IllegalStateException(e);
+		} catch (final InvocationTargetException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/** stops exporting and unregisters the MBean, if it was registered */
+	public synchronized void uninstall() {
+		Measurement.removeListener(this);
+		if (this.objectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+			} catch (final JMException e) {
+				L.error(e.getMessage(), e);
+			}
+			this.objectName = null;
+		}
+	}
+
+	/**
+	 * registers this exporter with the platform MBean-server
+	 *
+	 * @param name the object-name, e.g. <code>org.appkit:type=Measurements</code>
+	 * @throws IllegalStateException if registering fails
+	 */
+	public synchronized void registerMBean(final String name) {
+		Preconditions.checkState(this.objectName == null, "MBean registered already");
+		try {
+
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName oName   = new ObjectName(name);
+			server.registerMBean(this, oName);
+			this.objectName = oName;
+
+		} catch (final JMException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public void notifyStart(final Measurement m) {
+		if (this.flightRecorder != null) {
+			this.flightRecorder.notifyStart(m);
+		}
+	}
+
+	@Override
+	public void notifyData(final Measurement data) {
+		this.statistic.notifyData(data);
+		if (this.flightRecorder != null) {
+			this.flightRecorder.notifyData(data);
+		}
+	}
+
+	/** returns a copy of the histograms of all names, durations are in nanoseconds */
+	public ImmutableSortedMap<String, Histogram> snapshot() {
+		return this.statistic.snapshot();
+	}
+
+	/** returns the histograms of all names and starts a new interval, durations are in nanoseconds */
+	public ImmutableSortedMap<String, Histogram> snapshotAndReset() {
+		return this.statistic.snapshotAndReset();
+	}
+
+	@Override
+	public String[] getNames() {
+		return this.statistic.snapshot().keySet().toArray(new String[0]);
+	}
+
+	@Override
+	public String getResults() {
+		return this.statistic.getResults();
+	}
+
+	@Override
+	public String resetResults() {
+		return HistogramStatistic.format(this.statistic.snapshotAndReset());
+	}
+}
@@ -0,0 +1,19 @@
+package org.appkit.measure;
+
+/**
+ * JMX-interface of the {@link MeasurementExporter}.
+ *
+ */
+public interface MeasurementExporterMBean {
+
+	//~ Methods --------------------------------------------------------------------------------------------------------
+
+	/** returns the names of all measurements taken so far */
+	String[] getNames();
+
+	/** returns a table of count, min, avg, percentiles and max per name in milliseconds */
+	String getResults();
+
+	/** returns the table like {@link #getResults()} and starts a new interval */
+	String resetResults();
+}
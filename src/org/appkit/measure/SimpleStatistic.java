@@ -1,23 +1,21 @@
 package org.appkit.measure;
 
-import com.google.common.base.Function;
 import com.google.common.base.Strings;
-import com.google.common.collect.Collections2;
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Multimap;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
 
 import java.text.DecimalFormat;
 
-import java.util.Collection;
-import java.util.Collections;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * a {@link Measurement.Listener} which keeps track of max, min and avg duration of a batch of measurements, grouped by their name.
+ * Only running totals are kept, so memory use is constant per name.
  *
+ * @see HistogramStatistic
  */
 public class SimpleStatistic implements Measurement.Listener {
 
@@ -30,7 +28,7 @@ public class SimpleStatistic implements Measurement.Listener {
 
 	//~ Instance fields ------------------------------------------------------------------------------------------------
 
-	private final Multimap<String, Measurement> data = HashMultimap.create();
+	private final Map<String, Totals> data = Maps.newHashMap();
 
 	//~ Methods --------------------------------------------------------------------------------------------------------
 
@@ -39,22 +37,22 @@ public class SimpleStatistic implements Measurement.Listener {
 
 	@Override
 	public synchronized void notifyData(final Measurement mData) {
-		this.data.put(mData.getName(), mData);
+
+		Totals totals = this.data.get(mData.getName());
+		if (totals == null) {
+			totals = new Totals();
+			this.data.put(mData.getName(), totals);
+		}
+		totals.add(mData.getDuration());
 	}
 
-	public String getResults() {
+	public synchronized String getResults() {
 
 		StringBuilder sb  = new StringBuilder();
-		int maxNameLength =
-			Ordering.natural().max(
-				Collections2.transform(
-					this.data.keys(),
-					new Function<String, Integer>() {
-							@Override
-							public Integer apply(final String name) {
-								return name.length();
-							}
-						}));
+		int maxNameLength = 0;
+		for (final String name : this.data.keySet()) {
+			maxNameLength = Math.max(maxNameLength, name.length());
+		}
 
 		int col1size = maxNameLength + 3;
 
@@ -68,35 +66,33 @@ public class SimpleStatistic implements Measurement.Listener {
 		for (final String name : Ordering.natural().sortedCopy(this.data.keySet())) {
 			sb.append(Strings.padEnd(name + ":", col1size, ' '));
 
-			Collection<Measurement> measurements = this.data.get(name);
-			Collection<Long> durations			 =
-				Collections2.transform(
-					measurements,
-					new Function<Measurement, Long>() {
-							@Override
-							public Long apply(final Measurement md) {
-								return md.getDuration();
-							}
-						});
-
-			int count  = 0;
-			double avg = 0;
-			for (final Long d : durations) {
-				if (count == 0) {
-					avg = d;
-				} else {
-					avg = ((avg * count) + d) / (count + 1);
-				}
-				count++;
-
-			}
-			sb.append(Strings.padStart(Integer.toString(count), COLSIZE, ' '));
-			sb.append(Strings.padStart(decFormat.format(Collections.min(durations)), COLSIZE, ' '));
+			Totals totals = this.data.get(name);
+			double avg    = (double) totals.sum / totals.count;
+
+			sb.append(Strings.padStart(Long.toString(totals.count), COLSIZE, ' '));
+			sb.append(Strings.padStart(decFormat.format(totals.min), COLSIZE, ' '));
 			sb.append(Strings.padStart(decFormat.format(avg), COLSIZE, ' '));
-			sb.append(Strings.padStart(decFormat.format(Collections.max(durations)), COLSIZE, ' '));
+			sb.append(Strings.padStart(decFormat.format(totals.max), COLSIZE, ' '));
 			sb.append("\n");
 		}
 
 		return sb.toString();
 	}
-}
\ No newline at end of file
+
+	//~ Inner Classes --------------------------------------------------------------------------------------------------
+
+	private static final class Totals {
+
+		private long count = 0;
+		private long sum   = 0;
+		private long min   = Long.MAX_VALUE;
+		private long max   = Long.MIN_VALUE;
+
+		private void add(final long duration) {
+			this.count++;
+			this.sum     = this.sum + duration;
+			this.min     = Math.min(this.min, duration);
+			this.max     = Math.max(this.max, duration);
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package org.appkit.preferences;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * Implements the bulk-operations of {@link PrefStoreBackend} key by key. Backends which are able to write a batch at
+ * once should override them. Backends detecting external changes report them with
+ * {@link #fireExternalChange(ImmutableSet)}.
+ *
+ */
+public abstract class AbstractPrefStoreBackend implements PrefStoreBackend {
+
+	//~ Instance fields ------------------------------------------------------------------------------------------------
+
+	private volatile ChangeListener changeListener;
+
+	//~ Methods --------------------------------------------------------------------------------------------------------
+
+	@Override
+	public void setChangeListener(final ChangeListener listener) {
+		this.changeListener = listener;
+	}
+
+	/** notifies the change-listener, if there is one */
+	protected void fireExternalChange(final ImmutableSet<String> keys) {
+
+		ChangeListener listener = this.changeListener;
+		if ((listener != null) && ! keys.isEmpty()) {
+			listener.notifyExternalChange(keys);
+		}
+	}
+
+	/** holds nothing by default */
+	@Override
+	public void close() {}
+
+	@Override
+	public void storeAll(final Map<String, String> values) {
+		for (final Entry<String, String> entry : values.entrySet()) {
+			this.store(entry.getKey(), entry.getValue());
+		}
+	}
+
+	@Override
+	public void storeAndRemoveAll(final Map<String, String> values, final Set<String> removals) {
+		for (final String key : removals) {
+			this.remove(key);
+		}
+		this.storeAll(values);
+	}
+
+	@Override
+	public ImmutableMap<String, String> getAll(final Collection<String> keys) {
+
+		ImmutableMap.Builder<String, String> values = ImmutableMap.builder();
+		for (final String key : ImmutableSet.copyOf(keys)) {
+
+			String value = this.get(key);
+			if (value != null) {
+				values.put(key, value);
+			}
+		}
+
+		return values.build();
+	}
+
+	@Override
+	public void removePrefix(final String prefix) {
+		for (final String key : this.getKeys()) {
+			if (key.startsWith(prefix)) {
+				this.remove(key);
+			}
+		}
+	}
+}
@@ -0,0 +1,709 @@
+package org.appkit.preferences;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import org.appkit.concurrent.LoggingThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores preferences in a single file, as an append-only log of records.
+ * <p>
+ * Every store or remove appends one record, nothing is rewritten in place. Each record carries a CRC32 checksum;
+ * when loading, the file is memory-mapped and replayed up to the first incomplete or damaged record, which is what
+ * a crash during a write leaves behind. The damaged tail is cut off. Once the log contains more outdated records
+ * than current ones, it is compacted into a new file, which then replaces the old one. Where an open file can't be
+ * replaced atomically (Windows), it is closed and replaced non-atomically; if that fails too, compaction is tried
+ * again once the outdated records doubled.
+ * <p>
+ * Several processes may use the same file: records are appended while holding a lock on the file, after reading
+ * the records other processes appended in the meantime. Once a change-listener is set, a {@link WatchService}
+ * notices writes of other processes; only the appended records are read and only their keys are reported. If
+ * another process compacted the file, it is read again completely. Within one JVM a file can only be opened by one
+ * backend at a time, file locks are held by the JVM and can't separate two backends of the same one.
+ * <p>
+ * Failed writes throw a RuntimeException, so a {@link PrefStore} in write-behind mode keeps the values pending.
+ * <p>
+ * Record layout: <code>int length, int crc32, byte type, int keyLength, key, value</code> (strings in UTF-8, the
+ * length and checksum cover everything after the checksum). A batch is a single record of type <code>BATCH</code>
+ * with <code>int count</code> and then per entry <code>byte type, int keyLength, key, int valueLength, value</code>,
+ * so it is either loaded completely or not at all.
+ *
+ */
+final class FileBackend extends AbstractPrefStoreBackend {
+
+	//~ Static fields/initializers -------------------------------------------------------------------------------------
+
+	private static final Logger L				   = LoggerFactory.getLogger(FileBackend.class);
+	private static final int MAGIC				   = 0x41505246;
+	private static final int VERSION			   = 1;
+	private static final int HEADER_SIZE		   = 8;
+	private static final int RECORD_HEADER_SIZE    = 8;
+	private static final byte STORE				   = 1;
+	private static final byte REMOVE			   = 2;
+	private static final byte BATCH				   = 3;
+	private static final int MIN_OUTDATED_RECORDS  = 1000;
+
+	/* the canonical paths of the files opened in this JVM */
+	private static final Set<String> openFiles = Sets.newHashSet();
+
+	//~ Instance fields ------------------------------------------------------------------------------------------------
+
+	private final File file;
+	private final String canonicalPath;
+
+	/* guarded by this */
+	private final Map<String, String> values = Maps.newHashMap();
+	private final Set<String> changedKeys    = Sets.newHashSet();
+	private FileChannel channel;
+	private Object fileKey;
+	private long size;
+	private int records;
+	private int compactAtOutdated = MIN_OUTDATED_RECORDS;
+	private WatchService watchService;
+	private Thread watcher;
+
+	//~ Constructors ---------------------------------------------------------------------------------------------------
+
+	/**
+	 * @throws IllegalStateException if another backend of this JVM has the file opened
+	 */
+	protected FileBackend(final File file) {
+		this.file = file.getAbsoluteFile();
+		try {
+
+			File folder = this.file.getParentFile();
+			if (! folder.isDirectory() && ! folder.mkdirs()) {
+				throw new IOException("couldn't create " + folder);
+			}
+			this.canonicalPath = this.file.getCanonicalPath();
+
+		} catch (final IOException e) {
+			L.error(e.getMessage(), e);
+			throw new RuntimeException(e);
+		}
+
+		synchronized (openFiles) {
+			Preconditions.checkState(
+				openFiles.add(this.canonicalPath),
+				"%s is used by another FileBackend of this JVM already",
+				this.file);
+		}
+
+		try {
+			synchronized (this) {
+				this.open();
+				this.refreshLocked();
+				this.changedKeys.clear();
+				L.debug("loaded {} preferences from {} records", this.values.size(), this.records);
+			}
+
+		} catch (final IOException e) {
+			L.error(e.getMessage(), e);
+			this.close();
+			throw new RuntimeException(e);
+		}
+	}
+
+	//~ Methods --------------------------------------------------------------------------------------------------------
+
+	@Override
+	public synchronized String get(final String key) {
+		return this.values.get(key);
+	}
+
+	@Override
+	public void store(final String key, final String value) {
+		this.write(Collections.singletonMap(key, value));
+	}
+
+	@Override
+	public synchronized ImmutableSet<String> getKeys() {
+		return ImmutableSet.copyOf(this.values.keySet());
+	}
+
+	@Override
+	public void remove(final String key) {
+		this.write(Collections.<String, String>singletonMap(key, null));
+	}
+
+	@Override
+	public void storeAll(final Map<String, String> values) {
+		this.write(values);
+	}
+
+	@Override
+	public void storeAndRemoveAll(final Map<String, String> values, final Set<String> removals) {
+
+		Map<String, String> entries = Maps.newHashMap(values);
+		for (final String key : removals) {
+			entries.put(key, null);
+		}
+		this.write(entries);
+	}
+
+	@Override
+	public synchronized ImmutableMap<String, String> getAll(final Collection<String> keys) {
+		return super.getAll(keys);
+	}
+
+	@Override
+	public void removePrefix(final String prefix) {
+
+		Map<String, String> removals = Maps.newHashMap();
+		synchronized (this) {
+			for (final String key : this.values.keySet()) {
+				if (key.startsWith(prefix)) {
+					removals.put(key, null);
+				}
+			}
+		}
+		this.write(removals);
+	}
+
+	/** stops watching the file and closes it, the backend can't be used afterwards */
+	@Override
+	public synchronized void close() {
+		if (this.watcher != null) {
+			this.watcher.interrupt();
+			this.watcher = null;
+			try {
+				this.watchService.close();
+			} catch (final IOException e) {
+				L.error(e.getMessage(), e);
+			}
+		}
+
+		try {
+			if (this.channel != null) {
+				this.channel.close();
+			}
+		} catch (final IOException e) {
+			L.error(e.getMessage(), e);
+		}
+
+		synchronized (openFiles) {
+			openFiles.remove(this.canonicalPath);
+		}
+	}
+
+	/** starts watching the file for changes of other processes once there is a listener */
+	@Override
+	public void setChangeListener(final ChangeListener listener) {
+		super.setChangeListener(listener);
+		if (listener != null) {
+			this.startWatching();
+		}
+	}
+
+	/* null values are removals, throws a RuntimeException if writing fails */
+	private void write(final Map<String, String> entries) {
+		try {
+			this.writeLocked(entries);
+		} catch (final IOException e) {
+			L.error(e.getMessage(), e);
+			throw new RuntimeException("couldn't write to " + this.file, e);
+		} finally {
+
+			/* keys other processes changed are reported even if writing failed */
+			this.fireChangedKeys();
+		}
+	}
+
+	private void writeLocked(final Map<String, String> entries) throws IOException {
+		synchronized (this) {
+			FileLock lock = this.lock();
+			try {
+				this.refresh();
+
+				Map<String, String> changed = Maps.newHashMap();
+				for (final Entry<String, String> entry : entries.entrySet()) {
+					if (! Objects.equal(entry.getValue(), this.values.get(entry.getKey()))) {
+						changed.put(entry.getKey(), entry.getValue());
+					}
+				}
+				if (! changed.isEmpty()) {
+					this.append(changed);
+				}
+
+				/* last, it gives up the lock */
+				this.compactIfNeeded();
+
+			} finally {
+				if (lock.isValid()) {
+					lock.release();
+				}
+			}
+		}
+	}
+
+	/* reads the records other processes appended */
+	private synchronized void refreshLocked() throws IOException {
+
+		FileLock lock = this.lock();
+		try {
+			this.refresh();
+			this.compactIfNeeded();
+		} finally {
+			if (lock.isValid()) {
+				lock.release();
+			}
+		}
+	}
+
+	private void fireChangedKeys() {
+
+		ImmutableSet<String> keys;
+		synchronized (this) {
+			keys = ImmutableSet.copyOf(this.changedKeys);
+			this.changedKeys.clear();
+		}
+		this.fireExternalChange(keys);
+	}
+
+	private void open() throws IOException {
+		this.channel     = new RandomAccessFile(this.file, "rw").getChannel();
+		this.fileKey     = this.currentFileKey();
+		this.size	     = 0;
+		this.records     = 0;
+	}
+
+	private Object currentFileKey() throws IOException {
+		if (! this.file.exists()) {
+			return null;
+		}
+
+		return Files.readAttributes(this.file.toPath(), BasicFileAttributes.class).fileKey();
+	}
+
+	/* locks the file, reads it again first if it was replaced by the compaction of another process */
+	private FileLock lock() throws IOException {
+
+		boolean replaced = false;
+		while (true) {
+
+			FileLock lock = this.channel.lock();
+			if ((this.fileKey == null) || this.fileKey.equals(this.currentFileKey())) {
+				if (replaced) {
+					this.reread();
+				}
+				return lock;
+			}
+
+			L.debug("{} was replaced, reading it again", this.file);
+			replaced = true;
+			this.channel.close();
+			this.open();
+		}
+	}
+
+	/* reads the whole file again, the keys whose values differ are changed; the caller holds the lock */
+	private void reread() throws IOException {
+
+		Map<String, String> previous = Maps.newHashMap(this.values);
+		this.values.clear();
+		this.size	     = 0;
+		this.records     = 0;
+		this.refresh();
+
+		this.changedKeys.clear();
+		for (final String key : Sets.union(previous.keySet(), this.values.keySet())) {
+			if (! Objects.equal(previous.get(key), this.values.get(key))) {
+				this.changedKeys.add(key);
+			}
+		}
+	}
+
+	/* reads the records behind the last known one, the caller holds the lock */
+	private void refresh() throws IOException {
+
+		long length = this.channel.size();
+		if (length < HEADER_SIZE) {
+			this.channel.truncate(0);
+			this.writeHeader(this.channel);
+			this.size = HEADER_SIZE;
+			return;
+		}
+		if (length < this.size) {
+			this.reread();
+			return;
+		}
+		if (length == this.size) {
+			return;
+		}
+
+		long start			 = this.size;
+		MappedByteBuffer map = this.channel.map(MapMode.READ_ONLY, start, length - start);
+		if (start == 0) {
+			if ((map.getInt() != MAGIC) || (map.getInt() != VERSION)) {
+				throw new IOException("not a preferences file: " + this.file);
+			}
+			this.size = HEADER_SIZE;
+		}
+
+		CRC32 crc	   = new CRC32();
+		byte payload[] = new byte[256];
+		while (map.remaining() >= RECORD_HEADER_SIZE) {
+
+			int recordLength = map.getInt();
+			int checksum     = map.getInt();
+			if ((recordLength <= 0) || (recordLength > map.remaining())) {
+				break;
+			}
+
+			if (payload.length < recordLength) {
+				payload = new byte[Math.max(recordLength, payload.length * 2)];
+			}
+			map.get(payload, 0, recordLength);
+
+			crc.reset();
+			crc.update(payload, 0, recordLength);
+			if ((int) crc.getValue() != checksum) {
+				break;
+			}
+
+			this.records     = this.records + this.apply(payload, recordLength);
+			this.size	     = start + map.position();
+		}
+
+		/* every writer holds the lock, so this is what a crash left behind */
+		if (this.size < length) {
+			L.warn("discarding {} bytes of incomplete or damaged records in {}", length - this.size, this.file);
+			this.channel.truncate(this.size);
+		}
+	}
+
+	/* returns the number of entries in the record */
+	private int apply(final byte payload[], final int length) {
+
+		ByteBuffer buffer = ByteBuffer.wrap(payload, 0, length);
+		byte type		  = buffer.get();
+		if (type == BATCH) {
+
+			int count = buffer.getInt();
+			for (int i = 0; i < count; i++) {
+
+				byte entryType = buffer.get();
+				String key     = readString(buffer);
+				String value   = readString(buffer);
+				this.apply(entryType, key, value);
+			}
+
+			return count;
+		}
+
+		int keyLength  = buffer.getInt();
+		String key	   = new String(payload, buffer.position(), keyLength, Charsets.UTF_8);
+		int valueStart = buffer.position() + keyLength;
+		this.apply(type, key, new String(payload, valueStart, length - valueStart, Charsets.UTF_8));
+
+		return 1;
+	}
+
+	private void apply(final byte type, final String key, final String value) {
+		if (type == STORE) {
+			this.values.put(key, value);
+		} else {
+			this.values.remove(key);
+		}
+		this.changedKeys.add(key);
+	}
+
+	private static String readString(final ByteBuffer buffer) {
+
+		int length = buffer.getInt();
+		String str = new String(buffer.array(), buffer.position(), length, Charsets.UTF_8);
+		buffer.position(buffer.position() + length);
+
+		return str;
+	}
+
+	/* null values are removals, the caller holds the lock */
+	private void append(final Map<String, String> entries) throws IOException {
+
+		ByteBuffer record;
+		if (entries.size() == 1) {
+
+			Entry<String, String> entry = entries.entrySet().iterator().next();
+			record = (entry.getValue() == null) ? encode(REMOVE, entry.getKey(), "")
+												: encode(STORE, entry.getKey(), entry.getValue());
+		} else {
+			record = encodeBatch(entries);
+		}
+
+		long start = this.size;
+		try {
+			while (record.hasRemaining()) {
+				this.size = this.size + this.channel.write(record, this.size);
+			}
+
+		} catch (final IOException e) {
+
+			/* don't leave a partial record in front of the following ones */
+			this.size = start;
+			try {
+				this.channel.truncate(start);
+			} catch (final IOException e2) {
+				L.error(e2.getMessage(), e2);
+			}
+			throw e;
+		}
+
+		this.records = this.records + entries.size();
+		for (final Entry<String, String> entry : entries.entrySet()) {
+			if (entry.getValue() == null) {
+				this.values.remove(entry.getKey());
+			} else {
+				this.values.put(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	/* the caller holds the lock and gives it up: it's released when the old file is closed */
+	private void compactIfNeeded() {
+
+		int outdated = this.records - this.values.size();
+		if ((outdated < this.compactAtOutdated) || (outdated < this.values.size())) {
+			return;
+		}
+
+		try {
+			this.compact();
+			this.compactAtOutdated = MIN_OUTDATED_RECORDS;
+		} catch (final IOException e) {
+			L.error(e.getMessage(), e);
+
+			/* keep appending to the old file, don't retry on every write but once it doubled its outdated records */
+			this.compactAtOutdated = outdated * 2;
+		}
+	}
+
+	private void compact() throws IOException {
+		L.debug(
+			"compacting {}: {} records, {} preferences",
+			new Object[] { this.file, this.records, this.values.size() });
+
+		File compacted  = new File(this.file.getPath() + ".tmp");
+		FileChannel out = new RandomAccessFile(compacted, "rw").getChannel();
+		long compactedSize;
+		try {
+			out.truncate(0);
+			this.writeHeader(out);
+			for (final Entry<String, String> entry : this.values.entrySet()) {
+
+				ByteBuffer record = encode(STORE, entry.getKey(), entry.getValue());
+				while (record.hasRemaining()) {
+					out.write(record);
+				}
+			}
+			out.force(true);
+			compactedSize = out.position();
+		} finally {
+			out.close();
+		}
+
+		try {
+			Files.move(
+				compacted.toPath(),
+				this.file.toPath(),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+			this.channel.close();
+
+		} catch (final IOException e) {
+
+			/* e.g. on Windows, where open files can't be replaced: close it first and replace it non-atomically.
+			 * Records other processes append in between are lost */
+			L.debug("can't replace {} while it is open, closing it first: {}", this.file, e.getMessage());
+			this.channel.close();
+			try {
+				Files.move(compacted.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			} catch (final IOException e2) {
+
+				/* the old file stays in use, e.g. if it's still mapped */
+				compacted.delete();
+
+				long oldSize   = this.size;
+				int oldRecords = this.records;
+				this.open();
+				this.size	     = oldSize;
+				this.records     = oldRecords;
+				throw e2;
+			}
+		}
+
+		/* others may append as soon as the lock is gone, their records are read by the next refresh */
+		this.open();
+		this.size	     = compactedSize;
+		this.records     = this.values.size();
+	}
+
+	private void writeHeader(final FileChannel out) throws IOException {
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC).putInt(VERSION).flip();
+
+		long position = 0;
+		while (header.hasRemaining()) {
+			position = position + out.write(header, position);
+		}
+		out.position(HEADER_SIZE);
+	}
+
+	private synchronized void startWatching() {
+		if (this.watcher != null) {
+			return;
+		}
+
+		Path folder = this.file.getParentFile().toPath();
+		Path name   = this.file.toPath().getFileName();
+		try {
+			this.watchService = folder.getFileSystem().newWatchService();
+			folder.register(
+				this.watchService,
+				StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_MODIFY);
+		} catch (final IOException e) {
+			L.error("can't watch " + folder + " for changes of other processes", e);
+			return;
+		}
+
+		this.watcher = LoggingThreadFactory.create().newThread(new Watcher(this.watchService, name));
+		this.watcher.setName("FileBackend-Watcher");
+		this.watcher.setDaemon(true);
+		this.watcher.start();
+	}
+
+	private static ByteBuffer encode(final byte type, final String key, final String value) {
+
+		byte keyBytes[]   = key.getBytes(Charsets.UTF_8);
+		byte valueBytes[] = value.getBytes(Charsets.UTF_8);
+		int length		  = 1 + 4 + keyBytes.length + valueBytes.length;
+
+		ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+		record.putInt(length).putInt(0);
+		record.put(type).putInt(keyBytes.length).put(keyBytes).put(valueBytes);
+
+		return checksummed(record);
+	}
+
+	/* null values are removals */
+	private static ByteBuffer encodeBatch(final Map<String, String> entries) {
+
+		List<byte[]> strings = Lists.newArrayListWithCapacity(entries.size() * 2);
+		int length			 = 1 + 4;
+		for (final Entry<String, String> entry : entries.entrySet()) {
+
+			byte keyBytes[]   = entry.getKey().getBytes(Charsets.UTF_8);
+			byte valueBytes[] = (entry.getValue() == null) ? new byte[0] : entry.getValue().getBytes(Charsets.UTF_8);
+			strings.add(keyBytes);
+			strings.add(valueBytes);
+			length = length + 1 + 4 + keyBytes.length + 4 + valueBytes.length;
+		}
+
+		ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+		record.putInt(length).putInt(0);
+		record.put(BATCH).putInt(entries.size());
+
+		int i = 0;
+		for (final Entry<String, String> entry : entries.entrySet()) {
+			record.put((entry.getValue() == null) ? REMOVE : STORE);
+			record.putInt(strings.get(i).length).put(strings.get(i));
+			record.putInt(strings.get(i + 1).length).put(strings.get(i + 1));
+			i = i + 2;
+		}
+
+		return checksummed(record);
+	}
+
+	private static ByteBuffer checksummed(final ByteBuffer record) {
+
+		CRC32 crc = new CRC32();
+		crc.update(record.array(), RECORD_HEADER_SIZE, record.position() - RECORD_HEADER_SIZE);
+		record.putInt(4, (int) crc.getValue());
+		record.flip();
+
+		return record;
+	}
+
+	//~ Inner Classes --------------------------------------------------------------------------------------------------
+
+	private final class Watcher implements Runnable {
+
+		private final WatchService watchService;
+		private final Path name;
+
+		private Watcher(final WatchService watchService, final Path name) {
+			this.watchService     = watchService;
+			this.name			  = name;
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (true) {
+
+					WatchKey key    = this.watchService.take();
+					boolean changed = false;
+					for (final WatchEvent<?> event : key.pollEvents()) {
+						if ((event.kind() == StandardWatchEventKinds.OVERFLOW) || this.name.equals(event.context())) {
+							changed = true;
+						}
+					}
+					key.reset();
+
+					/* nothing but closing ends the watching */
+					if (changed) {
+						try {
+							refreshLocked();
+						} catch (final IOException e) {
+							L.error(e.getMessage(), e);
+						} catch (final RuntimeException e) {
+							L.error(e.getMessage(), e);
+						}
+						fireChangedKeys();
+					}
+				}
+			} catch (final InterruptedException e) {
+				L.debug("watcher interrupted (stopping)");
+			} catch (final ClosedWatchServiceException e) {
+				L.debug("watch-service closed (stopping)");
+			}
+		}
+	}
+}
@@ -1,27 +1,86 @@
 package org.appkit.preferences;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Queues;
 
+import java.util.Map;
+import java.util.Queue;
+import java.util.Map.Entry;
+import java.util.Set;
 import java.util.prefs.BackingStoreException;
+import java.util.prefs.PreferenceChangeEvent;
+import java.util.prefs.PreferenceChangeListener;
 import java.util.prefs.Preferences;
 
-final class JavaPreferencesBackend implements PrefStoreBackend {
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores preferences with {@link Preferences}. The bulk-operations write all keys to the node and sync it once, the
+ * Preferences-API itself doesn't offer atomic batches.
+ * <p>
+ * Changes are detected with a {@link PreferenceChangeListener}. The Preferences-API only reports changes made through
+ * it in this JVM, changes made by other processes are picked up by the implementation's periodic sync, if at all.
+ * The events of this backend's own writes are ignored: every written value is remembered until its event arrives.
+ * Events are delivered in the order of the writes, so an event is reported as external change only if it isn't the
+ * next one this backend expects and no own write of the key is still underway to overwrite it.
+ *
+ */
+final class JavaPreferencesBackend extends AbstractPrefStoreBackend {
+
+	//~ Static fields/initializers -------------------------------------------------------------------------------------
+
+	private static final Logger L = LoggerFactory.getLogger(JavaPreferencesBackend.class);
+
+	/* remembered for removed keys, the events of removals carry no value */
+	private static final Object REMOVED = new Object();
 
 	//~ Instance fields ------------------------------------------------------------------------------------------------
 
 	private final Preferences prefs;
+	private final Map<String, Queue<Object>> written = Maps.newHashMap();
+	private final PreferenceChangeListener changeListener =
+		new PreferenceChangeListener() {
+			@Override
+			public void preferenceChange(final PreferenceChangeEvent evt) {
+				if (! isOwnChange(evt)) {
+					fireExternalChange(ImmutableSet.of(evt.getKey()));
+				}
+			}
+		};
 
 	//~ Constructors ---------------------------------------------------------------------------------------------------
 
-	protected JavaPreferencesBackend(final String node) {
+	private JavaPreferencesBackend(final String node) {
 		this.prefs = Preferences.userRoot().node(node);
 	}
 
 	//~ Methods --------------------------------------------------------------------------------------------------------
 
+	/** creates a backend for the given node of the user-preferences and starts listening to its changes */
+	protected static JavaPreferencesBackend create(final String node) {
+
+		JavaPreferencesBackend backend = new JavaPreferencesBackend(node);
+		backend.prefs.addPreferenceChangeListener(backend.changeListener);
+
+		return backend;
+	}
+
+	@Override
+	public void close() {
+		this.prefs.removePreferenceChangeListener(this.changeListener);
+		synchronized (this.written) {
+			this.written.clear();
+		}
+	}
+
 	@Override
 	public void store(final String key, final String value) {
-		this.prefs.put(key, value);
+		synchronized (this.written) {
+			this.expectEvent(key, value);
+			this.prefs.put(key, value);
+		}
 	}
 
 	@Override
@@ -47,6 +106,78 @@ final class JavaPreferencesBackend implements PrefStoreBackend {
 
 	@Override
 	public void remove(final String key) {
-		this.prefs.remove(key);
+		synchronized (this.written) {
+			this.expectEvent(key, REMOVED);
+			this.prefs.remove(key);
+		}
+	}
+
+	@Override
+	public void storeAll(final Map<String, String> values) {
+		for (final Entry<String, String> entry : values.entrySet()) {
+			this.store(entry.getKey(), entry.getValue());
+		}
+		this.flush();
+	}
+
+	@Override
+	public void storeAndRemoveAll(final Map<String, String> values, final Set<String> removals) {
+		for (final String key : removals) {
+			this.remove(key);
+		}
+		this.storeAll(values);
+	}
+
+	@Override
+	public void removePrefix(final String prefix) {
+		for (final String key : this.getKeys()) {
+			if (key.startsWith(prefix)) {
+				this.remove(key);
+			}
+		}
+		this.flush();
+	}
+
+	/* called while holding the lock on written, together with the write itself so the order stays the same */
+	private void expectEvent(final String key, final Object value) {
+
+		Queue<Object> values = this.written.get(key);
+		if (values == null) {
+			values = Queues.newArrayDeque();
+			this.written.put(key, values);
+		}
+		values.add(value);
+	}
+
+	/*
+	 * true if the event is the next one expected for an own write, or if an own write of the key is still underway
+	 * and will overwrite the changed value anyway
+	 */
+	private boolean isOwnChange(final PreferenceChangeEvent evt) {
+
+		Object value = (evt.getNewValue() == null) ? REMOVED : evt.getNewValue();
+		synchronized (this.written) {
+
+			Queue<Object> values = this.written.get(evt.getKey());
+			if (values == null) {
+				return false;
+			}
+			if (values.peek().equals(value)) {
+				values.remove();
+				if (values.isEmpty()) {
+					this.written.remove(evt.getKey());
+				}
+			}
+
+			return true;
+		}
+	}
+
+	private void flush() {
+		try {
+			this.prefs.flush();
+		} catch (final BackingStoreException e) {
+			L.error(e.getMessage(), e);
+		}
 	}
-}
\ No newline at end of file
+}
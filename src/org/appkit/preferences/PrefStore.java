@@ -1,23 +1,92 @@
 package org.appkit.preferences;
 
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.io.File;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.appkit.concurrent.SmartExecutor;
+import org.appkit.osdependant.OSUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * A simple preferences store.
  * All retrieval methods require a default to be specified, which will
  * be returned when the key isn't found or type-conversion from String fails.
+ * <p>
+ * All preferences are read from the backend once, when the store is created, and kept in a sorted in-memory
+ * snapshot, which is updated on every write. Reads never touch the backend; long and boolean values are parsed
+ * once per write instead of once per read.
+ * <p>
+ * If the backend detects changes made by others (see {@link PrefStoreBackend#setChangeListener}), only the changed
+ * keys are read again. Local writes which haven't been written to the backend yet take precedence. Listeners
+ * registered with {@link #addKeyListener(String, Listener)} or {@link #addPrefixListener(String, Listener)} are
+ * notified about local and external changes, in the thread which made or detected the change.
+ * <p>
+ * In write-behind mode (see {@link #createWriteBehind(PrefStoreBackend, SmartExecutor, long, TimeUnit)})
+ * writes are kept in memory and written to the backend in one batch, a while after the first write,
+ * on {@link #flush()} and when the JVM shuts down. Repeated writes of a key are coalesced, reads see
+ * the written values immediately.
  *
  */
 public final class PrefStore {
 
+	//~ Static fields/initializers -------------------------------------------------------------------------------------
+
+	private static final Logger L = LoggerFactory.getLogger(PrefStore.class);
+
+	/* marks a pending removal */
+	private static final String REMOVED = new String("REMOVED");
+
 	//~ Instance fields ------------------------------------------------------------------------------------------------
 
 	private final PrefStoreBackend backend;
+	private final SmartExecutor flushExecutor;
+	private final long flushInterval;
+	private final ConcurrentNavigableMap<String, Value> snapshot = new ConcurrentSkipListMap<String, Value>();
+
+	/* write-behind state, guarded by pending */
+	private final Map<String, String> pending = Maps.newHashMap();
+	private boolean flushScheduled			  = false;
+
+	/* serializes writes to the backend and refreshes */
+	private final Object flushLock = new Object();
+	private final List<Registration> listeners = new CopyOnWriteArrayList<Registration>();
 
 	//~ Constructors ---------------------------------------------------------------------------------------------------
 
 	public PrefStore(final PrefStoreBackend backend) {
-		this.backend = backend;
+		this(backend, null, 0);
+	}
+
+	private PrefStore(final PrefStoreBackend backend, final SmartExecutor flushExecutor, final long flushInterval) {
+		this.backend		   = backend;
+		this.flushExecutor     = flushExecutor;
+		this.flushInterval     = flushInterval;
+		this.loadSnapshot();
+		this.backend.setChangeListener(
+			new PrefStoreBackend.ChangeListener() {
+					@Override
+					public void notifyExternalChange(final ImmutableSet<String> keys) {
+						refresh(keys);
+					}
+				});
 	}
 
 	//~ Methods --------------------------------------------------------------------------------------------------------
@@ -29,28 +98,299 @@ public final class PrefStore {
 	 *
 	 */
 	public static PrefStore createJavaPrefStore(final String node) {
-		return new PrefStore(new JavaPreferencesBackend(node));
+		return new PrefStore(JavaPreferencesBackend.create(node));
+	}
+
+	/**
+	 * create a new PrefStore, stored in a file in the user-data folder of the application
+	 *
+	 * @see OSUtils#userDataFolder(String)
+	 */
+	public static PrefStore createFilePrefStore(final String applicationName) {
+		return new PrefStore(new FileBackend(new File(OSUtils.userDataFolder(applicationName), "preferences.dat")));
+	}
+
+	/**
+	 * create a new PrefStore in write-behind mode
+	 *
+	 * @param flushExecutor executor used to write to the backend
+	 * @param flushInterval how long writes are collected before they are written to the backend
+	 */
+	public static PrefStore createWriteBehind(final PrefStoreBackend backend, final SmartExecutor flushExecutor,
+											  final long flushInterval, final TimeUnit timeUnit) {
+		Preconditions.checkNotNull(backend);
+		Preconditions.checkNotNull(flushExecutor);
+
+		final PrefStore prefStore = new PrefStore(backend, flushExecutor, timeUnit.toMillis(flushInterval));
+		Runtime.getRuntime().addShutdownHook(
+			new Thread("PrefStore-Flush") {
+					@Override
+					public void run() {
+						prefStore.flush();
+					}
+				});
+
+		return prefStore;
 	}
 
 	/**
 	 * store a String
 	 */
 	public void store(final String key, final String value) {
-		this.backend.store(key, value);
+		Preconditions.checkNotNull(value);
+		this.write(key, value);
 	}
 
 	/**
 	 * stores a long
 	 */
 	public void store(final String key, final long value) {
-		this.backend.store(key, String.valueOf(value));
+		this.write(key, String.valueOf(value));
 	}
 
 	/**
 	 * store a boolean
 	 */
 	public void store(final String key, final boolean value) {
-		this.backend.store(key, String.valueOf(value));
+		this.write(key, String.valueOf(value));
+	}
+
+	/**
+	 * stores several Strings, the backend writes them as one batch
+	 */
+	public void storeAll(final Map<String, String> values) {
+		for (final String value : values.values()) {
+			Preconditions.checkNotNull(value);
+		}
+		this.write(values);
+	}
+
+	/**
+	 * registers a listener which is notified when the value of the key changes
+	 */
+	public void addKeyListener(final String key, final Listener listener) {
+		Preconditions.checkNotNull(listener);
+		this.listeners.add(new Registration(key, false, listener));
+	}
+
+	/**
+	 * registers a listener which is notified when a value of a key starting with prefix changes
+	 */
+	public void addPrefixListener(final String prefix, final Listener listener) {
+		Preconditions.checkNotNull(listener);
+		this.listeners.add(new Registration(prefix, true, listener));
+	}
+
+	/**
+	 * removes all registrations of the listener
+	 */
+	public void removeListener(final Listener listener) {
+		for (final Registration registration : this.listeners) {
+			if (registration.listener == listener) {
+				this.listeners.remove(registration);
+			}
+		}
+	}
+
+	/**
+	 * Writes all pending values to the backend. Does nothing if this store isn't in write-behind mode. If the backend
+	 * fails, the values stay pending and are written with the next flush.
+	 */
+	public void flush() {
+		if (this.flushExecutor == null) {
+			return;
+		}
+
+		synchronized (this.flushLock) {
+
+			Map<String, String> writes;
+			synchronized (this.pending) {
+				writes				    = Maps.newHashMap(this.pending);
+				this.flushScheduled     = false;
+			}
+			if (writes.isEmpty()) {
+				return;
+			}
+
+			L.debug("flushing {} preferences", writes.size());
+			this.writeToBackend(writes);
+
+			/* written now, unless they were written again in the meantime */
+			synchronized (this.pending) {
+				for (final Entry<String, String> entry : writes.entrySet()) {
+					if (this.pending.get(entry.getKey()) == entry.getValue()) {
+						this.pending.remove(entry.getKey());
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Flushes pending values and closes the backend, e.g. stops watching for changes of other processes. The store
+	 * can't be used afterwards.
+	 */
+	public void close() {
+		this.flush();
+		this.backend.close();
+	}
+
+	private void loadSnapshot() {
+		for (final Entry<String, String> entry : this.backend.getAll(this.backend.getKeys()).entrySet()) {
+			this.snapshot.put(entry.getKey(), new Value(entry.getValue()));
+		}
+		L.debug("loaded {} preferences", this.snapshot.size());
+	}
+
+	/* stores and removals go to the backend as one batch, if there are several */
+	private void writeToBackend(final Map<String, String> values) {
+
+		Map<String, String> stores = Maps.newHashMap();
+		Set<String> removals	   = Sets.newHashSet();
+		for (final Entry<String, String> entry : values.entrySet()) {
+			if (entry.getValue() == REMOVED) {
+				removals.add(entry.getKey());
+			} else {
+				stores.put(entry.getKey(), entry.getValue());
+			}
+		}
+
+		if (removals.isEmpty() && (stores.size() == 1)) {
+
+			Entry<String, String> entry = stores.entrySet().iterator().next();
+			this.backend.store(entry.getKey(), entry.getValue());
+		} else if (stores.isEmpty() && (removals.size() == 1)) {
+			this.backend.remove(removals.iterator().next());
+		} else if (removals.isEmpty()) {
+			this.backend.storeAll(stores);
+		} else {
+			this.backend.storeAndRemoveAll(stores, removals);
+		}
+	}
+
+	private void write(final String key, final String value) {
+		this.write(Collections.singletonMap(key, value));
+	}
+
+	/*
+	 * The snapshot is updated together with the backend or pending, so concurrent writes of a key end up in the same
+	 * order in both and a concurrent refresh can't undo the write. Listeners are notified afterwards.
+	 */
+	private void write(final Map<String, String> values) {
+
+		Map<String, Value> previous;
+		if (this.flushExecutor == null) {
+			synchronized (this.flushLock) {
+				this.writeToBackend(values);
+				previous = this.updateSnapshot(values);
+			}
+			this.fireChanged(values, previous);
+			return;
+		}
+
+		boolean scheduleFlush;
+		synchronized (this.pending) {
+			this.pending.putAll(values);
+			previous			    = this.updateSnapshot(values);
+			scheduleFlush		    = ! this.flushScheduled;
+			this.flushScheduled     = true;
+		}
+		this.fireChanged(values, previous);
+
+		if (scheduleFlush) {
+			this.flushExecutor.schedule(
+				this.flushInterval,
+				TimeUnit.MILLISECONDS,
+				new Runnable() {
+					@Override
+					public void run() {
+						flush();
+					}
+				});
+		}
+	}
+
+	/* returns the previous values */
+	private Map<String, Value> updateSnapshot(final Map<String, String> values) {
+
+		Map<String, Value> previous = Maps.newHashMap();
+		for (final Entry<String, String> entry : values.entrySet()) {
+			if (entry.getValue() == REMOVED) {
+				previous.put(entry.getKey(), this.snapshot.remove(entry.getKey()));
+			} else {
+				previous.put(entry.getKey(), this.snapshot.put(entry.getKey(), new Value(entry.getValue())));
+			}
+		}
+
+		return previous;
+	}
+
+	private void fireChanged(final Map<String, String> values, final Map<String, Value> previous) {
+		for (final Entry<String, String> entry : values.entrySet()) {
+			this.fireChanged(
+				entry.getKey(),
+				previous.get(entry.getKey()),
+				(entry.getValue() == REMOVED) ? null : entry.getValue());
+		}
+	}
+
+	/* reads the keys changed by others again, unless there are local writes which haven't reached the backend */
+	private void refresh(final ImmutableSet<String> keys) {
+		synchronized (this.flushLock) {
+
+			Map<String, Value> previous = Maps.newHashMap();
+			for (final String key : keys) {
+
+				Value value = this.snapshot.get(key);
+				if (value != null) {
+					previous.put(key, value);
+				}
+			}
+
+			Set<String> changed;
+			synchronized (this.pending) {
+				changed = Sets.newHashSet(Sets.difference(keys, this.pending.keySet()));
+			}
+			L.debug("refreshing {} preferences", changed.size());
+
+			/* the conditional updates fail if a local write happened in the meantime */
+			ImmutableMap<String, String> current = this.backend.getAll(changed);
+			for (final String key : changed) {
+
+				Value old    = previous.get(key);
+				String value = current.get(key);
+				if (value == null) {
+					if ((old != null) && this.snapshot.remove(key, old)) {
+						this.fireChanged(key, old, null);
+					}
+				} else if (old == null) {
+					if (this.snapshot.putIfAbsent(key, new Value(value)) == null) {
+						this.fireChanged(key, null, value);
+					}
+				} else if (! old.string.equals(value) && this.snapshot.replace(key, old, new Value(value))) {
+					this.fireChanged(key, old, value);
+				}
+			}
+		}
+	}
+
+	private void fireChanged(final String key, final Value old, final String value) {
+		if (this.listeners.isEmpty()) {
+			return;
+		}
+		if ((old == null) ? (value == null) : old.string.equals(value)) {
+			return;
+		}
+
+		for (final Registration registration : this.listeners) {
+			if (registration.prefix ? key.startsWith(registration.key) : key.equals(registration.key)) {
+				try {
+					registration.listener.notifyChanged(key, value);
+				} catch (final RuntimeException e) {
+					L.error(e.getMessage(), e);
+				}
+			}
+		}
 	}
 
 	/**
@@ -60,12 +400,12 @@ public final class PrefStore {
 	 */
 	public String get(final String key, final String def) {
 
-		String pref = this.backend.get(key);
-		if (pref == null) {
+		Value value = this.snapshot.get(key);
+		if (value == null) {
 			return def;
 		}
 
-		return pref;
+		return value.string;
 	}
 
 	/**
@@ -74,24 +414,14 @@ public final class PrefStore {
 	 * @param def default to be returned if key wasn't found or {@link Long#valueOf(long_string)} failed.
 	 */
 	public long get(final String key, final long def) {
-
-		String pref = this.backend.get(key);
-		if (pref == null) {
-			return def;
-		}
-
-		try {
-			return Long.valueOf(pref);
-		} catch (final NumberFormatException e) {
-			return def;
-		}
+		return longValue(this.snapshot.get(key), def);
 	}
 
 	/**
 	 * check if a key-value mapping exists
 	 */
 	public boolean exists(final String key) {
-		return (this.backend.get(key) != null);
+		return this.snapshot.containsKey(key);
 	}
 
 	/**
@@ -100,26 +430,40 @@ public final class PrefStore {
 	 * @param def default to be returned if key wasn't found or stored property is no boolean ("true" or "false")
 	 */
 	public boolean get(final String key, final boolean def) {
-
-		String pref = this.backend.get(key);
-		if (pref == null) {
-			return def;
-		}
-
-		if (pref.equals("true")) {
-			return Boolean.TRUE;
-		} else if (pref.equals("false")) {
-			return Boolean.FALSE;
-		} else {
-			return def;
-		}
+		return booleanValue(this.snapshot.get(key), def);
 	}
 
 	/**
 	 * remove a property
 	 */
 	public void remove(final String property) {
-		this.backend.remove(property);
+		this.write(property, REMOVED);
+	}
+
+	/**
+	 * removes all properties starting with a prefix
+	 */
+	public void removePrefix(final String prefix) {
+		if (this.flushExecutor == null) {
+
+			Map<String, String> removals = Maps.newHashMap();
+			Map<String, Value> previous  = Maps.newHashMap();
+			synchronized (this.flushLock) {
+				this.backend.removePrefix(prefix);
+				for (final String key : this.prefixRange(prefix).keySet()) {
+					removals.put(key, REMOVED);
+					previous.put(key, this.snapshot.remove(key));
+				}
+			}
+			this.fireChanged(removals, previous);
+			return;
+		}
+
+		Map<String, String> removals = Maps.newHashMap();
+		for (final String key : this.prefixRange(prefix).keySet()) {
+			removals.put(key, REMOVED);
+		}
+		this.write(removals);
 	}
 
 	/**
@@ -128,8 +472,8 @@ public final class PrefStore {
 	public ImmutableMap<String, String> asMap() {
 
 		ImmutableMap.Builder<String, String> hm = ImmutableMap.builder();
-		for (final String key : this.backend.getKeys()) {
-			hm.put(key, this.backend.get(key));
+		for (final Entry<String, Value> entry : this.snapshot.entrySet()) {
+			hm.put(entry.getKey(), entry.getValue().string);
 		}
 
 		return hm.build();
@@ -141,10 +485,8 @@ public final class PrefStore {
 	public ImmutableMap<String, String> getPrefixMap(final String prefix) {
 
 		ImmutableMap.Builder<String, String> hm = ImmutableMap.builder();
-		for (final String key : this.backend.getKeys()) {
-			if (key.startsWith(prefix)) {
-				hm.put(key, this.get(key, null));
-			}
+		for (final Entry<String, Value> entry : this.prefixRange(prefix).entrySet()) {
+			hm.put(entry.getKey(), entry.getValue().string);
 		}
 
 		return hm.build();
@@ -158,10 +500,8 @@ public final class PrefStore {
 	public ImmutableMap<String, Long> getPrefixMap(final String prefix, final long def) {
 
 		ImmutableMap.Builder<String, Long> hm = ImmutableMap.builder();
-		for (final String key : this.backend.getKeys()) {
-			if (key.startsWith(prefix)) {
-				hm.put(key, this.get(key, def));
-			}
+		for (final Entry<String, Value> entry : this.prefixRange(prefix).entrySet()) {
+			hm.put(entry.getKey(), longValue(entry.getValue(), def));
 		}
 
 		return hm.build();
@@ -175,12 +515,104 @@ public final class PrefStore {
 	public ImmutableMap<String, Boolean> getPrefixMap(final String prefix, final boolean def) {
 
 		ImmutableMap.Builder<String, Boolean> hm = ImmutableMap.builder();
-		for (final String key : this.backend.getKeys()) {
-			if (key.startsWith(prefix)) {
-				hm.put(key, this.get(key, def));
-			}
+		for (final Entry<String, Value> entry : this.prefixRange(prefix).entrySet()) {
+			hm.put(entry.getKey(), booleanValue(entry.getValue(), def));
 		}
 
 		return hm.build();
 	}
-}
\ No newline at end of file
+
+	/* all keys starting with prefix lie between prefix (inclusive) and prefix + '\uffff' (exclusive) */
+	private NavigableMap<String, Value> prefixRange(final String prefix) {
+		return this.snapshot.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+	}
+
+	private static long longValue(final Value value, final long def) {
+		return ((value == null) || ! value.isLong) ? def : value.longValue;
+	}
+
+	private static boolean booleanValue(final Value value, final boolean def) {
+		return ((value == null) || (value.booleanValue == null)) ? def : value.booleanValue;
+	}
+
+	//~ Inner Interfaces -----------------------------------------------------------------------------------------------
+
+	/** notified about changed preferences */
+	public static interface Listener {
+
+		/**
+		 * @param value the new value or null if the key was removed
+		 */
+		public void notifyChanged(final String key, final String value);
+	}
+
+	//~ Inner Classes --------------------------------------------------------------------------------------------------
+
+	private static final class Registration {
+
+		private final String key;
+		private final boolean prefix;
+		private final Listener listener;
+
+		private Registration(final String key, final boolean prefix, final Listener listener) {
+			this.key		  = key;
+			this.prefix		  = prefix;
+			this.listener     = listener;
+		}
+	}
+
+	/** a stored String, together with its long and boolean interpretation, parsed once */
+	private static final class Value {
+
+		private final String string;
+		private final boolean isLong;
+		private final long longValue;
+		private final Boolean booleanValue;
+
+		private Value(final String string) {
+			this.string = string;
+
+			long parsed  = 0;
+			boolean ok   = false;
+			if (isNumeric(string)) {
+				try {
+					parsed     = Long.parseLong(string);
+					ok		   = true;
+				} catch (final NumberFormatException e) {
+					/* out of range */
+				}
+			}
+			this.isLong			    = ok;
+			this.longValue		    = parsed;
+
+			if (string.equals("true")) {
+				this.booleanValue = Boolean.TRUE;
+			} else if (string.equals("false")) {
+				this.booleanValue = Boolean.FALSE;
+			} else {
+				this.booleanValue = null;
+			}
+		}
+
+		/* cheap pre-check, so loading a snapshot of mostly non-numeric values doesn't throw for every one */
+		private static boolean isNumeric(final String string) {
+
+			int length = string.length();
+			if ((length == 0) || (length > 20)) {
+				return false;
+			}
+
+			int start = ((string.charAt(0) == '-') || (string.charAt(0) == '+')) ? 1 : 0;
+			if (start == length) {
+				return false;
+			}
+			for (int i = start; i < length; i++) {
+				if (! Character.isDigit(string.charAt(i))) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+	}
+}
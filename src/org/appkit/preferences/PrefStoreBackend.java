@@ -1,9 +1,17 @@
 package org.appkit.preferences;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
 /**
  * backend for a preferences store
+ * <p>
+ * Implementations should extend {@link AbstractPrefStoreBackend}, which implements the bulk-operations with the
+ * single-key ones.
  *
  * @see PrefStore
  *
@@ -23,4 +31,32 @@ public interface PrefStoreBackend {
 
 	/** removes a key */
 	void remove(final String key);
+
+	/** stores all entries as one batch: a backend either stores all of them or none */
+	public void storeAll(final Map<String, String> values);
+
+	/** stores and removes entries as one batch: a backend either writes all of them or none */
+	public void storeAndRemoveAll(final Map<String, String> values, final Set<String> removals);
+
+	/** retrieves the data of the given keys, keys without data are left out */
+	public ImmutableMap<String, String> getAll(final Collection<String> keys);
+
+	/** removes all keys starting with prefix as one batch */
+	public void removePrefix(final String prefix);
+
+	/**
+	 * Sets the listener to notify when keys may have been changed by someone else, e.g. another instance of the
+	 * application. Backends which can't detect such changes never notify it.
+	 */
+	public void setChangeListener(final ChangeListener listener);
+
+	/** releases what the backend holds, e.g. threads or files. It can't be used afterwards. */
+	public void close();
+
+	//~ Inner Interfaces -----------------------------------------------------------------------------------------------
+
+	/** notified by a backend about keys which may have changed, their data has to be retrieved again */
+	public static interface ChangeListener {
+		public void notifyExternalChange(final ImmutableSet<String> keys);
+	}
 }
\ No newline at end of file
@@ -1,21 +1,23 @@
 package org.appkit.registry;
 
 import com.google.common.base.Joiner;
-import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.BiMap;
-import com.google.common.collect.HashBiMap;
-import com.google.common.collect.HashMultiset;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Multiset;
 
 import java.util.Map;
 
+import org.appkit.registry.ResourceCache.Entry;
+import org.appkit.registry.TableItemUsages.ItemSetter;
+
 import org.eclipse.swt.events.DisposeEvent;
 import org.eclipse.swt.events.DisposeListener;
 import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.graphics.RGB;
 import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableItem;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,7 +29,10 @@ import org.slf4j.LoggerFactory;
  * or manually via the <code>putBack</code> methods.
  * <br />
  * This uses a simple counter to keep of track of usage. If it drops to 0, the color
- * is disposed.
+ * is disposed. Colors are cached by their {@link RGB}-value.
+ * <br />
+ * Colors can be set on ranges of {@link TableItem}s at once, e.g. from the <code>SWT.SetData</code>-listener of a
+ * virtual table. Their usages are released when the table is disposed or via <code>putBackItems</code>.
  */
 public final class Colors {
 
@@ -36,13 +41,31 @@ public final class Colors {
 	private static final Logger L = LoggerFactory.getLogger(Colors.class);
 
 	/* cache / registry */
-	private static final BiMap<Integer, Color> colorCache = HashBiMap.create();
-	private static final Multiset<Color> usage			  = HashMultiset.create();
-	private static boolean keepCached					  = false;
-
-	/* currently installed disposeListeners */
-	private static final Map<Control, DisposeListener> fgDisposeListeners = Maps.newHashMap();
-	private static final Map<Control, DisposeListener> bgDisposeListeners = Maps.newHashMap();
+	private static final ResourceCache<RGB, Color> colorCache = new ResourceCache<RGB, Color>();
+
+	/* currently installed disposeListeners, they know the used color */
+	private static final Map<Control, ControlDisposeListener> fgDisposeListeners = Maps.newIdentityHashMap();
+	private static final Map<Control, ControlDisposeListener> bgDisposeListeners = Maps.newIdentityHashMap();
+
+	/* colors used by table-items */
+	private static final TableItemUsages<RGB, Color> fgItemUsages =
+		new TableItemUsages<RGB, Color>(
+			colorCache,
+			new ItemSetter<Color>() {
+				@Override
+				public void set(final TableItem item, final int slot, final Color color) {
+					item.setForeground(color);
+				}
+			});
+	private static final TableItemUsages<RGB, Color> bgItemUsages =
+		new TableItemUsages<RGB, Color>(
+			colorCache,
+			new ItemSetter<Color>() {
+				@Override
+				public void set(final TableItem item, final int slot, final Color color) {
+					item.setBackground(color);
+				}
+			});
 
 	static {
 		Preconditions.checkArgument(Display.getCurrent() != null, "can't instantiate Colors on a non-display thread");
@@ -54,8 +77,26 @@ public final class Colors {
 
 	//~ Methods --------------------------------------------------------------------------------------------------------
 
+	/**
+	 * Keeps unused colors instead of disposing them, without bound. Turning it off disposes the ones kept so far.
+	 */
 	public static void keepCache(final boolean keep) {
-		keepCached = keep;
+		colorCache.keepCache(keep);
+	}
+
+	/**
+	 * Keeps at most <code>maxUnused</code> unused colors, the least recently used ones are disposed first.
+	 */
+	public static void keepCache(final int maxUnused) {
+		colorCache.keepCache(maxUnused, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Returns how often a color was found in the cache (hits), had to be created (misses and loads) and how many unused
+	 * ones were disposed to stay within the bounds (evictions).
+	 */
+	public static CacheStats getStats() {
+		return colorCache.getStats();
 	}
 
 	/**
@@ -107,34 +148,87 @@ public final class Colors {
 		}
 
 		/* search for color in cache or create it */
-		int hash		  = Objects.hashCode(r, g, b);
-		final Color color;
-		if (colorCache.containsKey(hash)) {
-			color		  = colorCache.get(hash);
-		} else {
-			color = new Color(Display.getCurrent(), r, g, b);
-			L.debug("created color: {}", color);
-			colorCache.put(hash, color);
-		}
+		Entry<RGB, Color> entry = lookup(r, g, b);
 
 		/* register usage */
-		usage.setCount(color, usage.count(color) + 1);
-		L.debug("usage of {} now {}", color, usage.count(color));
+		colorCache.use(entry);
 
 		/* set the color and add the disposer */
+		ControlDisposeListener listener = new ControlDisposeListener(foreground, entry);
 		if (foreground) {
-			control.setForeground(color);
-
-			DisposeListener listener = new ControlDisposeListener(true);
+			control.setForeground(entry.resource);
 			fgDisposeListeners.put(control, listener);
-			control.addDisposeListener(listener);
 		} else {
-			control.setBackground(color);
-
-			DisposeListener listener = new ControlDisposeListener(false);
+			control.setBackground(entry.resource);
 			bgDisposeListeners.put(control, listener);
-			control.addDisposeListener(listener);
 		}
+		control.addDisposeListener(listener);
+	}
+
+	/**
+	 * sets the foreground color of the items from start to end (inclusive) of a table to an RGB-value. Items are
+	 * tracked by the table: their colors are put back when it is disposed or via {@link #putBackItems}.
+	 *
+	 * @throws IllegalStateException if called from a non-Display thread
+	 * @throws IllegalArgumentException if the range is invalid
+	 */
+	public static void setItemsForeground(final Table table, final int start, final int end, final int r, final int g,
+										  final int b) {
+		Preconditions.checkState(
+			Display.getCurrent() != null,
+			"Colors is to be used from the display-thread exclusively!");
+
+		L.debug(
+			"setting foreground-color {} for items {} of {}",
+			new Object[] { Joiner.on(".").join(r, g, b), start + "-" + end, table });
+		fgItemUsages.set(table, start, end, 0, lookup(r, g, b));
+	}
+
+	/**
+	 * sets the background color of the items from start to end (inclusive) of a table to an RGB-value. Items are
+	 * tracked by the table: their colors are put back when it is disposed or via {@link #putBackItems}.
+	 *
+	 * @throws IllegalStateException if called from a non-Display thread
+	 * @throws IllegalArgumentException if the range is invalid
+	 */
+	public static void setItemsBackground(final Table table, final int start, final int end, final int r, final int g,
+										  final int b) {
+		Preconditions.checkState(
+			Display.getCurrent() != null,
+			"Colors is to be used from the display-thread exclusively!");
+
+		L.debug(
+			"setting background-color {} for items {} of {}",
+			new Object[] { Joiner.on(".").join(r, g, b), start + "-" + end, table });
+		bgItemUsages.set(table, start, end, 0, lookup(r, g, b));
+	}
+
+	/**
+	 * deregisters use of the fore- and background-colors of the items from start to end (inclusive) of a table and
+	 * resets them to the default. Call it when the items are cleared, e.g. along with {@link Table#clear(int, int)}.
+	 *
+	 * @throws IllegalStateException if called from a non-Display thread
+	 * @throws IllegalArgumentException if the range is invalid
+	 */
+	public static void putBackItems(final Table table, final int start, final int end) {
+		Preconditions.checkState(
+			Display.getCurrent() != null,
+			"Colors is to be used from the display-thread exclusively!");
+
+		fgItemUsages.putBack(table, start, end);
+		bgItemUsages.putBack(table, start, end);
+	}
+
+	/* returns the cached color or creates it */
+	private static Entry<RGB, Color> lookup(final int r, final int g, final int b) {
+
+		RGB rgb				    = new RGB(r, g, b);
+		Entry<RGB, Color> entry = colorCache.get(rgb);
+		if (entry == null) {
+			entry = colorCache.add(rgb, new Color(Display.getCurrent(), rgb));
+		}
+
+		return entry;
 	}
 
 	/**
@@ -163,34 +257,16 @@ public final class Colors {
 		}
 
 		/* remove control out of registry and remove listener */
+		ControlDisposeListener listener;
 		if (foreground) {
-			control.removeDisposeListener(fgDisposeListeners.remove(control));
+			listener = fgDisposeListeners.remove(control);
 		} else {
-			control.removeDisposeListener(bgDisposeListeners.remove(control));
+			listener = bgDisposeListeners.remove(control);
 		}
+		control.removeDisposeListener(listener);
 
-		/* get the color */
-		Color color;
-		if (foreground) {
-			color = control.getForeground();
-		} else {
-			color = control.getBackground();
-		}
-
-		/* decrease usage-counter */
-		usage.setCount(color, usage.count(color) - 1);
-		L.debug("usage of {} now {}", color, usage.count(color));
-
-		/* if usage is 0 dispose it */
-		if (! usage.contains(color)) {
-			if (keepCached) {
-				L.debug("keeping {} in cache", color);
-			} else {
-				L.debug("disposing {}", color);
-				colorCache.inverse().remove(color);
-				color.dispose();
-			}
-		}
+		/* decrease usage-counter, if usage is 0 dispose it */
+		colorCache.release(listener.entry);
 	}
 
 	//~ Inner Classes --------------------------------------------------------------------------------------------------
@@ -198,9 +274,11 @@ public final class Colors {
 	private static final class ControlDisposeListener implements DisposeListener {
 
 		private final boolean foreground;
+		private final Entry<RGB, Color> entry;
 
-		public ControlDisposeListener(final boolean foreground) {
-			this.foreground = foreground;
+		public ControlDisposeListener(final boolean foreground, final Entry<RGB, Color> entry) {
+			this.foreground     = foreground;
+			this.entry		    = entry;
 		}
 
 		@Override
@@ -1,24 +1,23 @@
 package org.appkit.registry;
 
-import com.google.common.base.Joiner;
-import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
-import com.google.common.collect.BiMap;
-import com.google.common.collect.HashBiMap;
-import com.google.common.collect.HashMultiset;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Multiset;
 
 import java.util.Map;
-import java.util.Map.Entry;
+
+import org.appkit.registry.ResourceCache.Entry;
+import org.appkit.registry.TableItemUsages.ItemSetter;
 
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.events.DisposeEvent;
 import org.eclipse.swt.events.DisposeListener;
 import org.eclipse.swt.graphics.Font;
+import org.eclipse.swt.graphics.FontData;
 import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Table;
 import org.eclipse.swt.widgets.TableItem;
 import org.eclipse.swt.widgets.TreeItem;
 import org.eclipse.swt.widgets.Widget;
@@ -33,7 +32,10 @@ import org.slf4j.LoggerFactory;
  * or manually via the {{@link #putBack(Widget)}-method.
  * <br />
  * This uses a simple counter to keep of track of usage. If it drops to 0, the font
- * is disposed.
+ * is disposed. Fonts are cached by their {@link FontData}.
+ * <br />
+ * Fonts can be set on ranges of {@link TableItem}s at once, e.g. from the <code>SWT.SetData</code>-listener of a
+ * virtual table, via {@link #setItems(Table, int, int, String)}. These items aren't registered one by one.
  */
 public final class Fonts {
 
@@ -46,15 +48,24 @@ public final class Fonts {
 	private static final int defaultFontHeight;
 
 	/* cache / registry */
-	private static final BiMap<Integer, Font> fontCache = HashBiMap.create();
-	private static final Multiset<Font> usage		    = HashMultiset.create();
-	private static boolean keepCached				    = false;
-
-	/* currently installed disposeListeners */
-	private static final Map<Widget, DisposeListener> disposeListeners = Maps.newHashMap();
-
-	/* setters for images */
-	private static final Map<Class<?extends Widget>, FontInterface> setters = Maps.newHashMap();
+	private static final ResourceCache<FontData, Font> fontCache = new ResourceCache<FontData, Font>();
+
+	/* currently installed disposeListeners, they know the used font */
+	private static final Map<Widget, FontDisposeListener> disposeListeners = Maps.newIdentityHashMap();
+
+	/* setters for fonts */
+	private static final SetterLookup<FontInterface> setters = new SetterLookup<FontInterface>();
+
+	/* fonts used by table-items */
+	private static final TableItemUsages<FontData, Font> itemUsages =
+		new TableItemUsages<FontData, Font>(
+			fontCache,
+			new ItemSetter<Font>() {
+				@Override
+				public void set(final TableItem item, final int slot, final Font font) {
+					item.setFont(font);
+				}
+			});
 
 	static {
 		Preconditions.checkArgument(Display.getCurrent() != null, "can't instantiate Fonts on a non-display thread");
@@ -72,25 +83,33 @@ public final class Fonts {
 
 	//~ Methods --------------------------------------------------------------------------------------------------------
 
+	/**
+	 * Keeps unused fonts instead of disposing them, without bound. Turning it off disposes the ones kept so far.
+	 */
 	public static void keepCache(final boolean keep) {
-		keepCached = keep;
+		fontCache.keepCache(keep);
 	}
 
 	/**
-	 * Tells Fonts how to set a Font on a certain widget.
+	 * Keeps at most <code>maxUnused</code> unused fonts, the least recently used ones are disposed first.
 	 */
-	public static <E extends Widget> void addFontSetter(final Class<E> clazz, final FontInterface setter) {
-		setters.put(clazz, setter);
+	public static void keepCache(final int maxUnused) {
+		fontCache.keepCache(maxUnused, Long.MAX_VALUE);
 	}
 
-	private static FontInterface getSetter(final Widget widget) {
-		for (final Entry<Class<?extends Widget>, FontInterface> entry : setters.entrySet()) {
-			if (entry.getKey().isAssignableFrom(widget.getClass())) {
-				return entry.getValue();
-			}
-		}
+	/**
+	 * Returns how often a font was found in the cache (hits), had to be created (misses and loads) and how many unused
+	 * ones were disposed to stay within the bounds (evictions).
+	 */
+	public static CacheStats getStats() {
+		return fontCache.getStats();
+	}
 
-		return null;
+	/**
+	 * Tells Fonts how to set a Font on a certain widget.
+	 */
+	public static <E extends Widget> void addFontSetter(final Class<E> clazz, final FontInterface setter) {
+		setters.add(clazz, setter);
 	}
 
 	/**
@@ -111,8 +130,10 @@ public final class Fonts {
 		Preconditions.checkState(
 			Display.getCurrent() != null,
 			"Fonts is to be used from the display-thread exclusively!");
+
+		FontInterface setter = setters.get(widget);
 		Preconditions.checkArgument(
-			getSetter(widget) != null,
+			setter != null,
 			"don't know how to set font on {}, add a FontInterface first",
 			widget);
 
@@ -122,37 +143,16 @@ public final class Fonts {
 		}
 
 		/* load / create font */
-		String name = fontStyle.getName(defaultFontName);
-		int height  = defaultFontHeight + fontStyle.getHeightDiff();
-		int style   = SWT.NONE;
-		if (fontStyle.bold()) {
-			style = style | SWT.BOLD;
-		}
-		if (fontStyle.italic()) {
-			style = style | SWT.ITALIC;
-		}
-
-		L.debug("setting font {} on {}", Joiner.on("-").join(name, height, fontStyle), widget);
-
-		/* set font */
-		int hash	    = Objects.hashCode(height, style, name);
-		final Font font;
-		if (fontCache.containsKey(hash)) {
-			font	    = fontCache.get(hash);
-		} else {
-			font = new Font(Display.getCurrent(), name, height, style);
-			L.debug("created font: {}", font);
-			fontCache.put(hash, font);
-		}
+		Entry<FontData, Font> entry = lookup(fontStyle);
+		L.debug("setting font {} on {}", entry.key, widget);
 
 		/* increase usage-counter */
-		usage.setCount(font, usage.count(font) + 1);
-		L.debug("usage of {} now {}", font, usage.count(font));
+		fontCache.use(entry);
 
 		/* set font and add the disposer */
-		getSetter(widget).setFont(widget, font);
+		setter.setFont(widget, entry.resource);
 
-		DisposeListener listener = new FontDisposeListener();
+		FontDisposeListener listener = new FontDisposeListener(entry);
 		disposeListeners.put(widget, listener);
 		widget.addDisposeListener(listener);
 	}
@@ -166,25 +166,76 @@ public final class Fonts {
 		Preconditions.checkState(disposeListeners.containsKey(widget), "widget {} not registered", widget);
 
 		/* remove widget out of registry and remove listener */
-		widget.removeDisposeListener(disposeListeners.remove(widget));
-
-		/* get the font */
-		Font font = getSetter(widget).getFont(widget);
-
-		/* decrease usage-counter */
-		usage.setCount(font, usage.count(font) - 1);
-		L.debug("usage of {} now {}", font, usage.count(font));
-
-		/* if usage is 0 dispose it */
-		if (! usage.contains(font)) {
-			if (keepCached) {
-				L.debug("keeping {} in cache", font);
-			} else {
-				L.debug("disposing {}", font);
-				fontCache.inverse().remove(font);
-				font.dispose();
-			}
+		FontDisposeListener listener = disposeListeners.remove(widget);
+		widget.removeDisposeListener(listener);
+
+		/* decrease usage-counter, if usage is 0 dispose it */
+		fontCache.release(listener.entry);
+	}
+
+	/**
+	 * sets a Font, described by a fontStyle on the items from start to end (inclusive) of a table. Items are tracked
+	 * by the table: their fonts are put back when it is disposed or via {@link #putBackItems(Table, int, int)}.
+	 *
+	 * @throws IllegalStateException if called from a non-Display thread
+	 * @throws IllegalArgumentException if the range is invalid
+	 */
+	public static void setItems(final Table table, final int start, final int end, final String styleString) {
+		setItems(table, start, end, StringFontStyle.parse(styleString));
+	}
+
+	/**
+	 * sets a Font, described by a fontStyle on the items from start to end (inclusive) of a table. Items are tracked
+	 * by the table: their fonts are put back when it is disposed or via {@link #putBackItems(Table, int, int)}.
+	 *
+	 * @throws IllegalStateException if called from a non-Display thread
+	 * @throws IllegalArgumentException if the range is invalid
+	 */
+	public static void setItems(final Table table, final int start, final int end, final Style fontStyle) {
+		Preconditions.checkState(
+			Display.getCurrent() != null,
+			"Fonts is to be used from the display-thread exclusively!");
+
+		Entry<FontData, Font> entry = lookup(fontStyle);
+		L.debug("setting font {} on items {} of {}", new Object[] { entry.key, start + "-" + end, table });
+		itemUsages.set(table, start, end, 0, entry);
+	}
+
+	/**
+	 * deregisters use of the fonts of the items from start to end (inclusive) of a table and resets them to the
+	 * default. Call it when the items are cleared, e.g. along with {@link Table#clear(int, int)}.
+	 *
+	 * @throws IllegalStateException if called from a non-Display thread
+	 * @throws IllegalArgumentException if the range is invalid
+	 */
+	public static void putBackItems(final Table table, final int start, final int end) {
+		Preconditions.checkState(
+			Display.getCurrent() != null,
+			"Fonts is to be used from the display-thread exclusively!");
+
+		itemUsages.putBack(table, start, end);
+	}
+
+	/* returns the cached font or creates it */
+	private static Entry<FontData, Font> lookup(final Style fontStyle) {
+
+		String name = fontStyle.getName(defaultFontName);
+		int height  = defaultFontHeight + fontStyle.getHeightDiff();
+		int style   = SWT.NONE;
+		if (fontStyle.bold()) {
+			style = style | SWT.BOLD;
 		}
+		if (fontStyle.italic()) {
+			style = style | SWT.ITALIC;
+		}
+
+		FontData fontData			= new FontData(name, height, style);
+		Entry<FontData, Font> entry = fontCache.get(fontData);
+		if (entry == null) {
+			entry = fontCache.add(fontData, new Font(Display.getCurrent(), fontData));
+		}
+
+		return entry;
 	}
 
 	//~ Inner Interfaces -----------------------------------------------------------------------------------------------
@@ -212,6 +263,13 @@ public final class Fonts {
 	//~ Inner Classes --------------------------------------------------------------------------------------------------
 
 	private static final class FontDisposeListener implements DisposeListener {
+
+		private final Entry<FontData, Font> entry;
+
+		public FontDisposeListener(final Entry<FontData, Font> entry) {
+			this.entry = entry;
+		}
+
 		@Override
 		public void widgetDisposed(final DisposeEvent event) {
 			putBack(event.widget);
@@ -0,0 +1,97 @@
+package org.appkit.registry;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.Map;
+
+import org.appkit.util.ParamInputSupplier;
+
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.Rectangle;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * One image containing many icons, each at a rectangle. It's decoded once when the first icon is needed, icons are
+ * cut out of the decoded data. Thread-safe, so icons can be cut on worker-threads.
+ */
+final class ImageAtlas<E> {
+
+	//~ Static fields/initializers -------------------------------------------------------------------------------------
+
+	private static final Logger L = LoggerFactory.getLogger(ImageAtlas.class);
+
+	//~ Instance fields ------------------------------------------------------------------------------------------------
+
+	private final E imageKey;
+	private final ParamInputSupplier<E, InputStream> streamSupplier;
+	private final ImmutableMap<Object, Rectangle> icons;
+	private ImageData data = null;
+
+	//~ Constructors ---------------------------------------------------------------------------------------------------
+
+	public ImageAtlas(final E imageKey, final ParamInputSupplier<E, InputStream> streamSupplier,
+					  final Map<?, Rectangle> icons) {
+		this.imageKey		    = imageKey;
+		this.streamSupplier     = streamSupplier;
+		this.icons			    = ImmutableMap.<Object, Rectangle>copyOf(icons);
+	}
+
+	//~ Methods --------------------------------------------------------------------------------------------------------
+
+	/** the keys of the icons */
+	public Iterable<Object> getKeys() {
+		return this.icons.keySet();
+	}
+
+	/** returns a copy of the data of the icon */
+	public ImageData cut(final Object key) throws IOException {
+
+		ImageData atlas = this.getData();
+		Rectangle rect  = this.icons.get(key);
+		if ((rect.x < 0) || (rect.y < 0) || ((rect.x + rect.width) > atlas.width)
+				|| ((rect.y + rect.height) > atlas.height)) {
+			throw new IOException("icon '" + key + "' at " + rect + " lies outside of atlas '" + this.imageKey + "'");
+		}
+
+		ImageData icon = new ImageData(rect.width, rect.height, atlas.depth, atlas.palette);
+		icon.transparentPixel = atlas.transparentPixel;
+		icon.alpha			  = atlas.alpha;
+
+		int[] pixels  = new int[rect.width];
+		byte[] alphas = new byte[rect.width];
+		for (int y = 0; y < rect.height; y++) {
+			atlas.getPixels(rect.x, rect.y + y, rect.width, pixels, 0);
+			icon.setPixels(0, y, rect.width, pixels, 0);
+			if (atlas.alphaData != null) {
+				atlas.getAlphas(rect.x, rect.y + y, rect.width, alphas, 0);
+				icon.setAlphas(0, y, rect.width, alphas, 0);
+			}
+		}
+
+		return icon;
+	}
+
+	/* decodes the atlas on first use */
+	private synchronized ImageData getData() throws IOException {
+		if (this.data == null) {
+			L.debug("decoding atlas {}", this.imageKey);
+
+			InputStream in = this.streamSupplier.getInput(this.imageKey);
+			if (in == null) {
+				throw new IOException("data supplier returned no InputStream for '" + this.imageKey + "'");
+			}
+			try {
+				this.data = new ImageData(in);
+			} finally {
+				in.close();
+			}
+		}
+
+		return this.data;
+	}
+}
@@ -0,0 +1,248 @@
+package org.appkit.registry;
+
+import com.google.common.base.Function;
+import com.google.common.base.Joiner;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.PaletteData;
+import org.eclipse.swt.graphics.RGB;
+
+/**
+ * Describes an image derived from another one: scaled, grayed out, overlaid with a badge or a combination of these,
+ * applied in the given order. Variants are values, equal variants of the same image share one cached image.
+ * <p>
+ * Example: <code>ImageVariant.scaled(16, 16).thenGrayed()</code>
+ *
+ * @see Images#setAsync(org.eclipse.swt.widgets.Widget, Object, ImageVariant, org.appkit.util.ParamInputSupplier,
+ *      org.eclipse.swt.graphics.Image)
+ */
+public final class ImageVariant {
+
+	//~ Instance fields ------------------------------------------------------------------------------------------------
+
+	private final ImmutableList<Op> ops;
+
+	//~ Constructors ---------------------------------------------------------------------------------------------------
+
+	private ImageVariant(final ImmutableList<Op> ops) {
+		this.ops = ops;
+	}
+
+	//~ Methods --------------------------------------------------------------------------------------------------------
+
+	/** the image scaled to width and height */
+	public static ImageVariant scaled(final int width, final int height) {
+		return new ImageVariant(ImmutableList.<Op>of(new Scale(width, height)));
+	}
+
+	/** the image in shades of gray, e.g. for disabled states */
+	public static ImageVariant grayed() {
+		return new ImageVariant(ImmutableList.<Op>of(new Gray()));
+	}
+
+	/** the image with the image of badgeKey drawn over its bottom-right corner */
+	public static ImageVariant badged(final Object badgeKey) {
+		return new ImageVariant(ImmutableList.<Op>of(new Badge(badgeKey)));
+	}
+
+	/** this variant, then scaled to width and height */
+	public ImageVariant thenScaled(final int width, final int height) {
+		return this.then(new Scale(width, height));
+	}
+
+	/** this variant, then grayed out */
+	public ImageVariant thenGrayed() {
+		return this.then(new Gray());
+	}
+
+	/** this variant, then with a badge */
+	public ImageVariant thenBadged(final Object badgeKey) {
+		return this.then(new Badge(badgeKey));
+	}
+
+	private ImageVariant then(final Op op) {
+		return new ImageVariant(ImmutableList.<Op>builder().addAll(this.ops).add(op).build());
+	}
+
+	/**
+	 * Derives the variant from the image data. Doesn't need the display-thread.
+	 *
+	 * @param badges loads the image data of badge-keys
+	 */
+	ImageData apply(final ImageData data, final Function<Object, ImageData> badges) {
+
+		ImageData result = data;
+		for (final Op op : this.ops) {
+			result = op.apply(result, badges);
+		}
+
+		return result;
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		return (obj instanceof ImageVariant) && this.ops.equals(((ImageVariant) obj).ops);
+	}
+
+	@Override
+	public int hashCode() {
+		return this.ops.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return Joiner.on(",").join(this.ops);
+	}
+
+	/* a copy with 24 bit direct colors and an alpha-value per pixel */
+	private static ImageData toDirect(final ImageData data) {
+
+		ImageData direct = new ImageData(data.width, data.height, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF));
+		for (int y = 0; y < data.height; y++) {
+			for (int x = 0; x < data.width; x++) {
+
+				int pixel = data.getPixel(x, y);
+				RGB rgb   = data.palette.getRGB(pixel);
+				direct.setPixel(x, y, (rgb.red << 16) | (rgb.green << 8) | rgb.blue);
+				direct.setAlpha(x, y, (pixel == data.transparentPixel) ? 0 : data.getAlpha(x, y));
+			}
+		}
+
+		return direct;
+	}
+
+	//~ Inner Classes --------------------------------------------------------------------------------------------------
+
+	private abstract static class Op {
+		abstract ImageData apply(final ImageData data, final Function<Object, ImageData> badges);
+	}
+
+	private static final class Scale extends Op {
+
+		private final int width;
+		private final int height;
+
+		private Scale(final int width, final int height) {
+			Preconditions.checkArgument((width > 0) && (height > 0), "width and height must be positive");
+			this.width	    = width;
+			this.height     = height;
+		}
+
+		@Override
+		ImageData apply(final ImageData data, final Function<Object, ImageData> badges) {
+			return data.scaledTo(this.width, this.height);
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			return (obj instanceof Scale) && (this.width == ((Scale) obj).width)
+				   && (this.height == ((Scale) obj).height);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hashCode(this.width, this.height);
+		}
+
+		@Override
+		public String toString() {
+			return "scaled " + this.width + "x" + this.height;
+		}
+	}
+
+	private static final class Gray extends Op {
+		@Override
+		ImageData apply(final ImageData data, final Function<Object, ImageData> badges) {
+
+			ImageData gray = toDirect(data);
+			for (int y = 0; y < gray.height; y++) {
+				for (int x = 0; x < gray.width; x++) {
+
+					int rgb   = gray.getPixel(x, y);
+					int value = ((((rgb >> 16) & 0xFF) * 77) + (((rgb >> 8) & 0xFF) * 151) + ((rgb & 0xFF) * 28)) >> 8;
+					gray.setPixel(x, y, (value << 16) | (value << 8) | value);
+				}
+			}
+
+			return gray;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			return obj instanceof Gray;
+		}
+
+		@Override
+		public int hashCode() {
+			return Gray.class.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return "grayed";
+		}
+	}
+
+	private static final class Badge extends Op {
+
+		private final Object badgeKey;
+
+		private Badge(final Object badgeKey) {
+			this.badgeKey = Preconditions.checkNotNull(badgeKey);
+		}
+
+		@Override
+		ImageData apply(final ImageData data, final Function<Object, ImageData> badges) {
+
+			ImageData result = toDirect(data);
+			ImageData badge  = toDirect(badges.apply(this.badgeKey));
+
+			int offsetX = Math.max(0, result.width - badge.width);
+			int offsetY = Math.max(0, result.height - badge.height);
+			for (int y = 0; (y < badge.height) && ((offsetY + y) < result.height); y++) {
+				for (int x = 0; (x < badge.width) && ((offsetX + x) < result.width); x++) {
+
+					int alpha = badge.getAlpha(x, y);
+					if (alpha == 0) {
+						continue;
+					}
+
+					int over  = badge.getPixel(x, y);
+					int under = result.getPixel(offsetX + x, offsetY + y);
+					int blend = 0;
+					for (int shift = 0; shift <= 16; shift = shift + 8) {
+
+						int channel = ((((over >> shift) & 0xFF) * alpha) + (((under >> shift) & 0xFF) * (255 - alpha)))
+									  / 255;
+						blend = blend | (channel << shift);
+					}
+					result.setPixel(offsetX + x, offsetY + y, blend);
+					result.setAlpha(
+						offsetX + x,
+						offsetY + y,
+						Math.max(alpha, result.getAlpha(offsetX + x, offsetY + y)));
+				}
+			}
+
+			return result;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			return (obj instanceof Badge) && this.badgeKey.equals(((Badge) obj).badgeKey);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.badgeKey.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return "badged " + this.badgeKey;
+		}
+	}
+}
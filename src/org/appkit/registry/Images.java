@@ -1,31 +1,53 @@
 package org.appkit.registry;
 
+import com.google.common.base.Function;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
 import com.google.common.base.Supplier;
-import com.google.common.collect.BiMap;
-import com.google.common.collect.HashBiMap;
-import com.google.common.collect.HashMultiset;
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Multiset;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 
 import java.io.IOException;
 import java.io.InputStream;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.appkit.concurrent.LoggingThreadFactory;
+import org.appkit.concurrent.UIDispatcher;
+import org.appkit.registry.ResourceCache.Entry;
+import org.appkit.registry.TableItemUsages.ItemSetter;
 import org.appkit.util.ParamInputSupplier;
 import org.appkit.util.ResourceStreamSupplier;
 
 import org.eclipse.swt.events.DisposeEvent;
 import org.eclipse.swt.events.DisposeListener;
 import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.Rectangle;
 import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Label;
 import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableItem;
 import org.eclipse.swt.widgets.Widget;
 
 import org.slf4j.Logger;
@@ -39,26 +61,66 @@ import org.slf4j.LoggerFactory;
  * or manually via the {@link #putBack(Widget)} method.
  * <br />
  * This uses a simple counter to keep of track of usage. If it drops to 0, the image
- * is disposed.
+ * is disposed. Images are cached by their key, so keys have to implement <code>equals</code> and
+ * <code>hashCode</code>.
  * <br />
  * The methods expect {@link Supplier}s for keys. These can be easily implemented by an Enum for example.
+ * <br />
+ * With <code>setAsync</code> images which aren't cached yet are decoded on worker-threads and set once they are
+ * ready, so the display-thread doesn't wait for I/O and decoding. <code>prefetch</code> decodes a list of images in
+ * parallel to warm the cache, which has to be kept for it.
+ * <br />
+ * Scaled, grayed out or badged variants of an image are derived asynchronously as well, see {@link ImageVariant}.
+ * <br />
+ * Many small icons can be loaded from one sprite-atlas instead of one resource each, see
+ * {@link #addAtlas(String, String)}.
+ * <br />
+ * Images can be set on ranges of {@link TableItem}s at once, e.g. in virtual tables, see
+ * {@link #setItems(Table, int, int, int, Object, ParamInputSupplier)}.
  */
 public final class Images {
 
 	//~ Static fields/initializers -------------------------------------------------------------------------------------
 
-	private static final Logger L = LoggerFactory.getLogger(Images.class);
+	private static final Logger L			 = LoggerFactory.getLogger(Images.class);
+	private static final int DECODE_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+	/* cache / registry, weighing images by their pixels */
+	private static final ResourceCache<Object, Image> imageCache =
+		new ResourceCache<Object, Image>(
+			new Weigher<Object, Image>() {
+				@Override
+				public int weigh(final Object key, final Image image) {
 
-	/* cache / registry */
-	private static final BiMap<Integer, Image> imageCache = HashBiMap.create();
-	private static final Multiset<Image> usage			  = HashMultiset.create();
-	private static boolean keepCached					  = false;
+					Rectangle bounds = image.getBounds();
+					return bounds.width * bounds.height;
+				}
+			});
 
-	/* currently installed disposeListeners */
-	private static final Map<Widget, DisposeListener> disposeListeners = Maps.newHashMap();
+	/* currently installed disposeListeners, they know the used image */
+	private static final Map<Widget, ImageDisposeListener> disposeListeners = Maps.newIdentityHashMap();
 
 	/* setters for images */
-	private static final Map<Class<?extends Widget>, ImageInterface> setters = Maps.newHashMap();
+	private static final SetterLookup<ImageInterface> setters = new SetterLookup<ImageInterface>();
+
+	/* asynchronous loading: images being decoded by key and the key each waiting widget wants */
+	private static final Map<Object, Decoding> decodings = Maps.newHashMap();
+	private static final Map<Widget, Object> pendingKeys = Maps.newIdentityHashMap();
+	private static ListeningExecutorService decodeExecutor = createDecodeExecutor();
+
+	/* images used by table-items, by column */
+	private static final TableItemUsages<Object, Image> itemUsages =
+		new TableItemUsages<Object, Image>(
+			imageCache,
+			new ItemSetter<Image>() {
+				@Override
+				public void set(final TableItem item, final int column, final Image image) {
+					item.setImage(column, image);
+				}
+			});
+
+	/* atlases by the keys of their icons, read by worker-threads too */
+	private static final Map<Object, ImageAtlas<?>> atlases = Maps.newConcurrentMap();
 
 	static {
 		Preconditions.checkArgument(Display.getCurrent() != null, "can't instantiate Images on a non-display thread");
@@ -73,25 +135,124 @@ public final class Images {
 
 	//~ Methods --------------------------------------------------------------------------------------------------------
 
+	/**
+	 * Keeps unused images instead of disposing them, without bound. Turning it off disposes the ones kept so far.
+	 */
 	public static void keepCache(final boolean keep) {
-		keepCached = keep;
+		imageCache.keepCache(keep);
 	}
 
-	private static ImageInterface getSetter(final Widget widget) {
-		for (final Entry<Class<?extends Widget>, ImageInterface> entry : setters.entrySet()) {
-			if (entry.getKey().isAssignableFrom(widget.getClass())) {
-				return entry.getValue();
-			}
-		}
+	/**
+	 * Keeps at most <code>maxUnused</code> unused images with at most <code>maxUnusedPixels</code> pixels
+	 * altogether, the least recently used ones are disposed first.
+	 */
+	public static void keepCache(final int maxUnused, final long maxUnusedPixels) {
+		imageCache.keepCache(maxUnused, maxUnusedPixels);
+	}
+
+	/**
+	 * Returns how often an image was found in the cache (hits), had to be loaded (misses and loads) and how many
+	 * unused ones were disposed to stay within the bounds (evictions).
+	 */
+	public static CacheStats getStats() {
+		return imageCache.getStats();
+	}
+
+	/**
+	 * Sets the executor used to decode images asynchronously. By default a small pool of daemon-threads is used.
+	 */
+	public static void setDecodeExecutor(final ExecutorService executor) {
+		Preconditions.checkNotNull(executor);
+		decodeExecutor = MoreExecutors.listeningDecorator(executor);
+	}
+
+	private static ListeningExecutorService createDecodeExecutor() {
 
-		return null;
+		final ThreadFactory threadFactory = LoggingThreadFactory.create();
+		return MoreExecutors.listeningDecorator(
+			Executors.newFixedThreadPool(
+				DECODE_THREADS,
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(final Runnable r) {
+
+						Thread thread = threadFactory.newThread(r);
+						thread.setName("Images-Decoder");
+						thread.setDaemon(true);
+
+						return thread;
+					}
+				}));
 	}
 
 	/**
 	 * Tells Images how to set an Image on a certain type.
 	 */
 	public static <E extends Widget> void addImageSetter(final Class<E> clazz, final ImageInterface setter) {
-		setters.put(clazz, setter);
+		setters.add(clazz, setter);
+	}
+
+	/**
+	 * Registers a sprite-atlas loaded from resources, see {@link #addAtlas(Object, ParamInputSupplier, Map)}. The index
+	 * is a properties-file mapping the keys of the icons to their rectangles: <code>icons/save.png = 0,16,16,16</code>
+	 * for an icon at x=0, y=16 with a width and height of 16.
+	 *
+	 * @throws IllegalStateException if called from a non-Display thread
+	 * @throws IllegalArgumentException if the index is malformed
+	 */
+	public static void addAtlas(final String imageKey, final String indexKey) {
+
+		ResourceStreamSupplier streamSupplier = ResourceStreamSupplier.create();
+		Map<String, Rectangle> icons		  = Maps.newHashMap();
+		try {
+			L.debug("loading atlas-index '{}'", indexKey);
+
+			Properties index = new Properties();
+			InputStream in   = streamSupplier.getInput(indexKey);
+			index.load(in);
+			in.close();
+
+			for (final String key : index.stringPropertyNames()) {
+
+				List<String> values = Lists.newArrayList(Splitter.on(',').trimResults().split(index.getProperty(key)));
+				Preconditions.checkArgument(values.size() == 4, "'%s' in '%s' isn't 'x,y,width,height'", key, indexKey);
+				icons.put(
+					key,
+					new Rectangle(
+						Integer.parseInt(values.get(0)),
+						Integer.parseInt(values.get(1)),
+						Integer.parseInt(values.get(2)),
+						Integer.parseInt(values.get(3))));
+			}
+
+		} catch (final IOException e) {
+			L.error(e.getMessage(), e);
+			throw new RuntimeException(e);
+		}
+
+		addAtlas(imageKey, streamSupplier, icons);
+	}
+
+	/**
+	 * Registers a sprite-atlas: one image containing many icons, each at a rectangle. Setting one of these icons by
+	 * its key, synchronously or asynchronously, cuts it out of the atlas instead of loading it on its own. The atlas
+	 * is decoded once, when the first of its icons is needed, and is kept from then on. Icons are cached and counted
+	 * like any other image.
+	 *
+	 * @param icons the rectangles of the icons by their keys
+	 * @throws IllegalStateException if called from a non-Display thread
+	 */
+	public static <E> void addAtlas(final E imageKey, final ParamInputSupplier<E, InputStream> streamSupplier,
+									final Map<?, Rectangle> icons) {
+		Preconditions.checkState(
+			Display.getCurrent() != null,
+			"Images is to be used from the display-thread exclusively!");
+
+		ImageAtlas<E> atlas = new ImageAtlas<E>(imageKey, streamSupplier, icons);
+		for (final Object key : atlas.getKeys()) {
+			atlases.put(key, atlas);
+		}
+		L.debug("added atlas {} with {} icons", imageKey, icons.size());
 	}
 
 	/**
@@ -129,61 +290,428 @@ public final class Images {
 		Preconditions.checkState(
 			Display.getCurrent() != null,
 			"Images is to be used from the display-thread exclusively!");
+
+		ImageInterface setter = setters.get(widget);
 		Preconditions.checkArgument(
-			getSetter(widget) != null,
+			setter != null,
 			"don't know how to set image on {}, add an ImageInterface first",
 			widget);
 
 		/* if we already set an image on this widget, remove it */
-		if (disposeListeners.containsKey(widget)) {
+		if (disposeListeners.containsKey(widget) || pendingKeys.containsKey(widget)) {
 			putBack(widget);
 		}
 
 		/* get image out of cache or load it */
-		int hash    = Objects.hashCode(key);
-		Image image = null;
-
 		L.debug("setting image {} on {}", key, widget);
-		if (imageCache.containsKey(hash)) {
-			image = imageCache.get(hash);
 
-		} else {
+		Entry<Object, Image> entry = load(key, streamSupplier);
+		if (entry == null) {
+			return;
+		}
+
+		bind(widget, setter, entry);
+	}
+
+	/**
+	 * Sets an image on a column of the items from start to end (inclusive) of a table, like
+	 * {@link #setItems(Table, int, int, int, Object, ParamInputSupplier)}, loading it via a
+	 * {@link ResourceStreamSupplier}.
+	 */
+	public static void setItems(final Table table, final int start, final int end, final int column, final String key) {
+		setItems(table, start, end, column, key, ResourceStreamSupplier.create());
+	}
+
+	/**
+	 * Sets an image on a column of the items from start to end (inclusive) of a table, e.g. from the
+	 * <code>SWT.SetData</code>-listener of a virtual table. Instead of registering each item, the items are tracked
+	 * by the table: their images are put back when it is disposed or via {@link #putBackItems(Table, int, int)}.
+	 *
+	 * @throws IllegalStateException if called from a non-Display thread
+	 * @throws IllegalArgumentException if the range is invalid
+	 */
+	public static <E> void setItems(final Table table, final int start, final int end, final int column, final E key,
+									final ParamInputSupplier<E, InputStream> streamSupplier) {
+		Preconditions.checkState(
+			Display.getCurrent() != null,
+			"Images is to be used from the display-thread exclusively!");
+
+		L.debug("setting image {} on items {} of {}", new Object[] { key, start + "-" + end, table });
+
+		Entry<Object, Image> entry = load(key, streamSupplier);
+		if (entry == null) {
+			return;
+		}
+
+		itemUsages.set(table, start, end, column, entry);
+	}
+
+	/**
+	 * Deregisters use of the images of the items from start to end (inclusive) of a table and removes them from the
+	 * items. Call it when the items are cleared, e.g. along with {@link Table#clear(int, int)}.
+	 *
+	 * @throws IllegalStateException if called from a non-Display thread
+	 * @throws IllegalArgumentException if the range is invalid
+	 */
+	public static void putBackItems(final Table table, final int start, final int end) {
+		Preconditions.checkState(
+			Display.getCurrent() != null,
+			"Images is to be used from the display-thread exclusively!");
+
+		itemUsages.putBack(table, start, end);
+	}
+
+	/* returns the cached image or loads it, null if it couldn't be loaded */
+	private static <E> Entry<Object, Image> load(final E key, final ParamInputSupplier<E, InputStream> streamSupplier) {
+
+		Entry<Object, Image> entry = imageCache.get(key);
+		if (entry == null) {
+
+			Image image = null;
 			try {
 
-				InputStream in = streamSupplier.getInput(key);
-				if (in == null) {
-					L.error("data supplier returned no InputStream for '{}'", key);
-					return;
-				}
+				/* icons of an atlas are cut out of its data */
+				ImageAtlas<?> atlas = atlases.get(key);
+				if (atlas != null) {
+					image = new Image(Display.getCurrent(), atlas.cut(key));
+				} else {
 
-				image = new Image(Display.getCurrent(), in);
-				L.debug("created image: {}", image);
+					InputStream in = streamSupplier.getInput(key);
+					if (in == null) {
+						L.error("data supplier returned no InputStream for '{}'", key);
+						return null;
+					}
 
-				in.close();
+					image = new Image(Display.getCurrent(), in);
+
+					in.close();
+				}
 			} catch (final IOException e) {
 				L.error(e.getMessage(), e);
 			}
 
-			if (image != null) {
-				imageCache.put(hash, image);
+			if (image == null) {
+				return null;
 			}
+			entry = imageCache.add(key, image);
+		}
+
+		return entry;
+	}
+
+	/**
+	 * Sets an image on the widget like {@link #set(Widget, String)}, but if it isn't cached yet, it is loaded
+	 * asynchronously, see {@link #setAsync(Widget, Object, ParamInputSupplier, Image)}.
+	 *
+	 * @param placeholder shown until the image is ready, may be null
+	 */
+	public static void setAsync(final Widget widget, final String key, final Image placeholder) {
+		setAsync(widget, key, ResourceStreamSupplier.create(), placeholder);
+	}
+
+	/**
+	 * Sets an image on the widget. If it is cached, it is set immediately. Otherwise it is decoded on a worker-thread
+	 * and set on the display-thread once it is ready. Requests for a key which is already being decoded wait for the
+	 * same decoding. A widget waiting for its image counts as registered: another <code>set</code> or
+	 * {@link #putBack(Widget)} cancels the wait.
+	 *
+	 * @param placeholder shown until the image is ready, may be null. It isn't managed by this registry.
+	 * @throws IllegalStateException if called from a non-Display thread
+	 * @throws IllegalArgumentException if image couldn't be set
+	 */
+	public static <E> void setAsync(final Widget widget, final E key,
+									final ParamInputSupplier<E, InputStream> streamSupplier, final Image placeholder) {
+
+		ImageInterface setter	   = prepareAsync(widget);
+		Entry<Object, Image> entry = imageCache.get(key);
+		if (entry != null) {
+			bind(widget, setter, entry);
+			return;
+		}
+
+		L.debug("setting image {} on {} when it's decoded", key, widget);
+		if (placeholder != null) {
+			setter.setImage(widget, placeholder);
 		}
+		pendingKeys.put(widget, key);
+		decode(key, streamSupplier).waiting.add(widget);
+	}
+
+	/**
+	 * Sets a variant of an image on the widget like {@link #setAsync(Widget, Object, ImageVariant, ParamInputSupplier,
+	 * Image)}, loading images via a {@link ResourceStreamSupplier}.
+	 *
+	 * @param placeholder shown until the image is ready, may be null
+	 */
+	public static void setAsync(final Widget widget, final String key, final ImageVariant variant,
+								final Image placeholder) {
+		setAsync(widget, key, variant, ResourceStreamSupplier.create(), placeholder);
+	}
+
+	/**
+	 * Sets a variant of the image of key on the widget, see {@link ImageVariant}. Variants are cached by key and
+	 * variant. If it isn't cached yet, it is derived on a worker-thread from the image of key, which is taken from the
+	 * cache or loaded via the <code>streamSupplier</code>, like the images of badges. Otherwise it behaves like
+	 * {@link #setAsync(Widget, Object, ParamInputSupplier, Image)}.
+	 * <br />
+	 * A variant counts as one usage of the image it was derived from, until the variant is disposed.
+	 *
+	 * @param placeholder shown until the image is ready, may be null. It isn't managed by this registry.
+	 * @throws IllegalStateException if called from a non-Display thread
+	 * @throws IllegalArgumentException if image couldn't be set
+	 */
+	public static <E> void setAsync(final Widget widget, final E key, final ImageVariant variant,
+									final ParamInputSupplier<E, InputStream> streamSupplier, final Image placeholder) {
+		Preconditions.checkNotNull(variant);
+
+		ImageInterface setter	   = prepareAsync(widget);
+		VariantKey variantKey	   = new VariantKey(key, variant);
+		Entry<Object, Image> entry = imageCache.get(variantKey);
+		if (entry != null) {
+			bind(widget, setter, entry);
+			return;
+		}
+
+		L.debug("setting image {} on {} when it's derived", variantKey, widget);
+		if (placeholder != null) {
+			setter.setImage(widget, placeholder);
+		}
+		pendingKeys.put(widget, variantKey);
+		decodeVariant(key, variant, streamSupplier).waiting.add(widget);
+	}
+
+	/* checks the thread, returns the setter and removes an image set before */
+	private static ImageInterface prepareAsync(final Widget widget) {
+		Preconditions.checkState(
+			Display.getCurrent() != null,
+			"Images is to be used from the display-thread exclusively!");
+
+		ImageInterface setter = setters.get(widget);
+		Preconditions.checkArgument(
+			setter != null,
+			"don't know how to set image on {}, add an ImageInterface first",
+			widget);
+
+		/* if we already set an image on this widget, remove it */
+		if (disposeListeners.containsKey(widget) || pendingKeys.containsKey(widget)) {
+			putBack(widget);
+		}
+
+		return setter;
+	}
+
+	/**
+	 * Decodes the images of the keys in parallel on worker-threads and caches them, like
+	 * {@link #prefetch(Collection, ParamInputSupplier)}.
+	 */
+	public static ListenableFuture<List<Object>> prefetch(final Collection<String> keys) {
+		return prefetch(keys, ResourceStreamSupplier.create());
+	}
+
+	/**
+	 * Decodes the images of the keys in parallel on worker-threads and caches them, without using them. Meant to warm
+	 * the cache, e.g. at startup. Prefetched images are kept as unused images of the cache, so the cache has to be
+	 * kept, see {@link #keepCache(boolean)}: they are disposed when a bounded cache evicts them or the cache is turned
+	 * off. If the cache is turned off while images are still being decoded, these aren't cached anymore.
+	 *
+	 * @return a future which is done once all images are decoded, it fails if one of them couldn't be loaded
+	 * @throws IllegalStateException if called from a non-Display thread or if the cache isn't kept
+	 */
+	public static <E> ListenableFuture<List<Object>> prefetch(final Collection<E> keys,
+															  final ParamInputSupplier<E, InputStream> streamSupplier) {
+		Preconditions.checkState(
+			Display.getCurrent() != null,
+			"Images is to be used from the display-thread exclusively!");
+		Preconditions.checkState(imageCache.isKept(), "prefetched images would never be disposed, keep the cache");
+
+		List<ListenableFuture<Object>> cached = Lists.newArrayList();
+		for (final E key : keys) {
+			if (imageCache.peek(key) == null) {
+
+				Decoding decoding = decode(key, streamSupplier);
+				decoding.prefetch = true;
+				cached.add(decoding.cached);
+			}
+		}
+
+		return Futures.allAsList(cached);
+	}
+
+	/* returns the running decoding of key or starts one */
+	private static <E> Decoding decode(final E key, final ParamInputSupplier<E, InputStream> streamSupplier) {
+
+		Decoding decoding = decodings.get(key);
+		if (decoding != null) {
+			return decoding;
+		}
+
+		return decode(
+			key,
+			new Callable<Decoded>() {
+				@Override
+				public Decoded call() throws IOException {
+					return new Decoded(read(key, streamSupplier), null, null);
+				}
+			});
+	}
+
+	/* returns the running derivation of the variant or starts one */
+	private static <E> Decoding decodeVariant(final E key, final ImageVariant variant,
+											  final ParamInputSupplier<E, InputStream> streamSupplier) {
+
+		VariantKey variantKey = new VariantKey(key, variant);
+		Decoding decoding     = decodings.get(variantKey);
+		if (decoding != null) {
+			return decoding;
+		}
+
+		/* derive from the cached image, if there is one */
+		Entry<Object, Image> base	   = imageCache.peek(key);
+		final ImageData cachedData     = (base != null) ? base.resource.getImageData() : null;
+		final Function<Object, ImageData> badges =
+			new Function<Object, ImageData>() {
+				@Override
+				public ImageData apply(final Object badgeKey) {
+					try {
+						return readBadge(badgeKey, streamSupplier);
+					} catch (final IOException e) {
+						throw Throwables.propagate(e);
+					}
+				}
+			};
+
+		return decode(
+			variantKey,
+			new Callable<Decoded>() {
+				@Override
+				public Decoded call() throws IOException {
+
+					ImageData baseData = (cachedData != null) ? cachedData : read(key, streamSupplier);
+					return new Decoded(variant.apply(baseData, badges), key, baseData);
+				}
+			});
+	}
+
+	/* runs the task on a worker-thread and hands the result to the display-thread */
+	private static Decoding decode(final Object key, final Callable<Decoded> task) {
+
+		final Decoding created				 = new Decoding();
+		final UIDispatcher dispatcher		 = UIDispatcher.forDisplay(Display.getCurrent());
+		final ListenableFuture<Decoded> data = decodeExecutor.submit(task);
+
+		data.addListener(
+			new Runnable() {
+				@Override
+				public void run() {
+					dispatcher.async(
+						new Runnable() {
+							@Override
+							public void run() {
+								decoded(key, created, data);
+							}
+						});
+				}
+			},
+			MoreExecutors.sameThreadExecutor());
+
+		decodings.put(key, created);
+
+		return created;
+	}
+
+	/* reads the image data of key, on a worker-thread */
+	private static <E> ImageData read(final E key, final ParamInputSupplier<E, InputStream> streamSupplier)
+							   throws IOException
+	{
+
+		ImageAtlas<?> atlas = atlases.get(key);
+		if (atlas != null) {
+			return atlas.cut(key);
+		}
+
+		InputStream in = streamSupplier.getInput(key);
+		if (in == null) {
+			throw new IOException("data supplier returned no InputStream for '" + key + "'");
+		}
+		try {
+			return new ImageData(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/* badge-keys aren't typed, they are passed to the supplier of the image */
+	@SuppressWarnings("unchecked")
+	private static ImageData readBadge(final Object key, final ParamInputSupplier<?, InputStream> streamSupplier)
+						   throws IOException
+	{
+		return read(key, (ParamInputSupplier<Object, InputStream>) streamSupplier);
+	}
+
+	/* runs on the display-thread: creates the image and sets it on the widgets still waiting for it */
+	private static void decoded(final Object key, final Decoding decoding, final ListenableFuture<Decoded> data) {
+		decodings.remove(key);
+
+		List<Widget> waiting = Lists.newArrayList();
+		for (final Widget widget : decoding.waiting) {
+			if (! widget.isDisposed() && key.equals(pendingKeys.get(widget))) {
+				pendingKeys.remove(widget);
+				waiting.add(widget);
+			} else if (widget.isDisposed()) {
+				pendingKeys.remove(widget);
+			}
+		}
+
+		Entry<Object, Image> entry = imageCache.peek(key);
+		/* unused prefetched images are only disposed by a kept cache */
+		if ((entry == null) && ((decoding.prefetch && imageCache.isKept()) || ! waiting.isEmpty())) {
+			try {
+
+				Decoded decoded = data.get();
+
+				/* a variant uses the image it was derived from */
+				Entry<Object, Image> base = null;
+				if (decoded.baseKey != null) {
+					base = imageCache.peek(decoded.baseKey);
+					if (base == null) {
+						base = imageCache.add(decoded.baseKey, new Image(Display.getCurrent(), decoded.baseData));
+					}
+				}
+				entry = imageCache.add(key, new Image(Display.getCurrent(), decoded.data), base);
+			} catch (final ExecutionException e) {
+				L.error(e.getCause().getMessage(), e.getCause());
+				decoding.cached.setException(e.getCause());
+				return;
+			} catch (final InterruptedException e) {
+				/* the future is done already */
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+
+		for (final Widget widget : waiting) {
+			bind(widget, setters.get(widget), entry);
+		}
+		decoding.cached.set(key);
+	}
+
+	/* increases the usage of the image, sets it and adds the disposer */
+	private static void bind(final Widget widget, final ImageInterface setter, final Entry<Object, Image> entry) {
 
 		/* increase usage-counter */
-		usage.setCount(image, usage.count(image) + 1);
-		L.debug("usage of {} now {}", image, usage.count(image));
+		imageCache.use(entry);
 
 		/* set image */
-		setters.get(widget.getClass()).setImage(widget, image);
+		setter.setImage(widget, entry.resource);
 
 		/* and add the disposer */
-		DisposeListener listener = new ImageDisposeListener();
+		ImageDisposeListener listener = new ImageDisposeListener(entry);
 		disposeListeners.put(widget, listener);
 		widget.addDisposeListener(listener);
 	}
 
 	/**
-	 * Manually deregisters use of an image of a widget
+	 * Manually deregisters use of an image of a widget, or stops waiting for an image loaded asynchronously
 	 *
 	 * @throws IllegalStateException if called from a non-Display thread
 	 * @throws IllegalStateException if widget isn't registered
@@ -193,28 +721,19 @@ public final class Images {
 		Preconditions.checkState(
 			Display.getCurrent() != null,
 			"Images is to be used from the display-thread exclusively!");
+
+		/* still waiting for an asynchronously loaded image */
+		if (pendingKeys.remove(widget) != null) {
+			return;
+		}
 		Preconditions.checkState(disposeListeners.containsKey(widget), "widget {} not registered", widget);
 
 		/* remove widget out of registry and remove listener */
-		widget.removeDisposeListener(disposeListeners.remove(widget));
-
-		/* get the image */
-		Image image = getSetter(widget).getImage(widget);
-
-		/* decrease usage-counter */
-		usage.setCount(image, usage.count(image) - 1);
-		L.debug("usage of {} now {}", image, usage.count(image));
-
-		/* if usage is 0 dispose it */
-		if (! usage.contains(image)) {
-			if (keepCached) {
-				L.debug("keeping {} in cache", image);
-			} else {
-				L.debug("disposing {}", image);
-				imageCache.inverse().remove(image);
-				image.dispose();
-			}
-		}
+		ImageDisposeListener listener = disposeListeners.remove(widget);
+		widget.removeDisposeListener(listener);
+
+		/* decrease usage-counter, if usage is 0 dispose it */
+		imageCache.release(listener.entry);
 	}
 
 	//~ Inner Interfaces -----------------------------------------------------------------------------------------------
@@ -231,7 +750,64 @@ public final class Images {
 
 	//~ Inner Classes --------------------------------------------------------------------------------------------------
 
+	/* a running asynchronous decoding, only accessed on the display-thread */
+	private static final class Decoding {
+
+		private final List<Widget> waiting			   = Lists.newArrayList();
+		private final SettableFuture<Object> cached = SettableFuture.create();
+		private boolean prefetch				   = false;
+	}
+
+	/* the decoded image data and, for a variant, the data of the image it was derived from */
+	private static final class Decoded {
+
+		private final ImageData data;
+		private final Object baseKey;
+		private final ImageData baseData;
+
+		private Decoded(final ImageData data, final Object baseKey, final ImageData baseData) {
+			this.data		  = data;
+			this.baseKey	  = baseKey;
+			this.baseData     = baseData;
+		}
+	}
+
+	/* cache-key of a variant */
+	private static final class VariantKey {
+
+		private final Object key;
+		private final ImageVariant variant;
+
+		private VariantKey(final Object key, final ImageVariant variant) {
+			this.key		 = key;
+			this.variant     = variant;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			return (obj instanceof VariantKey) && this.key.equals(((VariantKey) obj).key)
+				   && this.variant.equals(((VariantKey) obj).variant);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hashCode(this.key, this.variant);
+		}
+
+		@Override
+		public String toString() {
+			return this.key + " (" + this.variant + ")";
+		}
+	}
+
 	private static final class ImageDisposeListener implements DisposeListener {
+
+		private final Entry<Object, Image> entry;
+
+		public ImageDisposeListener(final Entry<Object, Image> entry) {
+			this.entry = entry;
+		}
+
 		@Override
 		public void widgetDisposed(final DisposeEvent event) {
 			putBack(event.widget);
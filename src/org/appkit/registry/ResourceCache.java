@@ -0,0 +1,218 @@
+package org.appkit.registry;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.Maps;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.swt.graphics.Resource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resources of one kind by key, each with a usage-counter. A resource is disposed when its last usage is released,
+ * unless the cache is kept. Keys have to implement <code>equals</code> and <code>hashCode</code> by value.
+ * <br />
+ * A kept cache can be bounded: unused resources are kept in least-recently-used order, and the oldest ones are
+ * disposed once there are more than a maximum number of them or their summed up weight exceeds a maximum.
+ * <br />
+ * To be used from the display-thread only.
+ */
+final class ResourceCache<K, R extends Resource> {
+
+	//~ Static fields/initializers -------------------------------------------------------------------------------------
+
+	private static final Logger L = LoggerFactory.getLogger(ResourceCache.class);
+
+	//~ Instance fields ------------------------------------------------------------------------------------------------
+
+	private final Map<K, Entry<K, R>> entries = Maps.newHashMap();
+	private final Weigher<K, R> weigher;
+
+	/* unused entries in least-recently-used order, only if the cache is kept */
+	private final LinkedHashMap<K, Entry<K, R>> unused = new LinkedHashMap<K, Entry<K, R>>();
+	private boolean keepCached						    = false;
+	private int maxUnused							    = Integer.MAX_VALUE;
+	private long maxUnusedWeight					    = Long.MAX_VALUE;
+	private long unusedWeight						    = 0;
+
+	/* statistics */
+	private long hits	    = 0;
+	private long misses     = 0;
+	private long loads	    = 0;
+	private long evictions  = 0;
+
+	//~ Constructors ---------------------------------------------------------------------------------------------------
+
+	/** every resource weighs 1 */
+	public ResourceCache() {
+		this(null);
+	}
+
+	public ResourceCache(final Weigher<K, R> weigher) {
+		this.weigher = weigher;
+	}
+
+	//~ Methods --------------------------------------------------------------------------------------------------------
+
+	/** keeps unused resources without bound or disposes them, including the ones kept so far */
+	public void keepCache(final boolean keep) {
+		this.keepCache(keep, Integer.MAX_VALUE, Long.MAX_VALUE);
+	}
+
+	/** keeps at most maxUnused unused resources, weighing at most maxUnusedWeight altogether */
+	public void keepCache(final int maxUnused, final long maxUnusedWeight) {
+		Preconditions.checkArgument(maxUnused >= 0, "maxUnused must not be negative");
+		Preconditions.checkArgument(maxUnusedWeight >= 0, "maxUnusedWeight must not be negative");
+		this.keepCache(true, maxUnused, maxUnusedWeight);
+	}
+
+	private void keepCache(final boolean keep, final int maxUnused, final long maxUnusedWeight) {
+		this.keepCached			 = keep;
+		this.maxUnused			 = keep ? maxUnused : 0;
+		this.maxUnusedWeight     = keep ? maxUnusedWeight : 0;
+		this.evict();
+	}
+
+	/** true if unused resources are kept, bounded or not */
+	public boolean isKept() {
+		return this.keepCached;
+	}
+
+	/** returns the entry for key or null if there is none, counts as a hit or a miss */
+	public Entry<K, R> get(final K key) {
+
+		Entry<K, R> entry = this.entries.get(key);
+		if (entry == null) {
+			this.misses++;
+		} else {
+			this.hits++;
+		}
+
+		return entry;
+	}
+
+	/** returns the entry for key or null if there is none */
+	public Entry<K, R> peek(final K key) {
+		return this.entries.get(key);
+	}
+
+	/** adds a newly created resource, its usage is 0 */
+	public Entry<K, R> add(final K key, final R resource) {
+		return this.add(key, resource, null);
+	}
+
+	/**
+	 * adds a newly created resource derived from the resource of parent, its usage is 0. The parent counts one usage
+	 * until the derived resource is disposed.
+	 */
+	public Entry<K, R> add(final K key, final R resource, final Entry<K, R> parent) {
+		L.debug("created {} for {}", resource, key);
+
+		Entry<K, R> entry = new Entry<K, R>(key, resource, this.weigh(key, resource), parent);
+		if (parent != null) {
+			this.use(parent);
+		}
+		this.entries.put(key, entry);
+		this.loads++;
+
+		/* a kept cache treats it as unused until it is used. It isn't evicted before it can be, the bounds are met
+		 * again with the next eviction */
+		if (this.keepCached) {
+			this.unused.put(key, entry);
+			this.unusedWeight = this.unusedWeight + entry.weight;
+		}
+
+		return entry;
+	}
+
+	/** increases the usage-counter */
+	public void use(final Entry<K, R> entry) {
+		if ((entry.usage == 0) && (this.unused.remove(entry.key) != null)) {
+			this.unusedWeight = this.unusedWeight - entry.weight;
+		}
+
+		entry.usage++;
+		L.debug("usage of {} now {}", entry.resource, entry.usage);
+	}
+
+	/** decreases the usage-counter and disposes the resource, if it isn't used anymore */
+	public void release(final Entry<K, R> entry) {
+		entry.usage--;
+		L.debug("usage of {} now {}", entry.resource, entry.usage);
+
+		if (entry.usage == 0) {
+			if (this.keepCached) {
+				L.debug("keeping {} in cache", entry.resource);
+				this.addUnused(entry);
+			} else {
+				this.dispose(entry);
+			}
+		}
+	}
+
+	/** returns hit-, miss-, load- and eviction-counts */
+	public CacheStats getStats() {
+		return new CacheStats(this.hits, this.misses, this.loads, 0, 0, this.evictions);
+	}
+
+	private void addUnused(final Entry<K, R> entry) {
+		this.unused.put(entry.key, entry);
+		this.unusedWeight = this.unusedWeight + entry.weight;
+		this.evict();
+	}
+
+	/* disposes the least recently used resources until the bounds are met */
+	private void evict() {
+
+		/* disposing may release a parent into the unused entries, so iterate anew each time */
+		while (((this.unused.size() > this.maxUnused) || (this.unusedWeight > this.maxUnusedWeight))
+				   && ! this.unused.isEmpty()) {
+
+			Iterator<Entry<K, R>> it = this.unused.values().iterator();
+			Entry<K, R> entry	     = it.next();
+			it.remove();
+			this.unusedWeight = this.unusedWeight - entry.weight;
+			this.evictions++;
+			this.dispose(entry);
+		}
+	}
+
+	private void dispose(final Entry<K, R> entry) {
+		L.debug("disposing {}", entry.resource);
+		this.entries.remove(entry.key);
+		entry.resource.dispose();
+
+		if (entry.parent != null) {
+			this.release(entry.parent);
+		}
+	}
+
+	private long weigh(final K key, final R resource) {
+		return (this.weigher == null) ? 1 : this.weigher.weigh(key, resource);
+	}
+
+	//~ Inner Classes --------------------------------------------------------------------------------------------------
+
+	/** a cached resource and its usage-counter */
+	static final class Entry<K, R extends Resource> {
+
+		final K key;
+		final R resource;
+		final long weight;
+		final Entry<K, R> parent;
+		int usage = 0;
+
+		private Entry(final K key, final R resource, final long weight, final Entry<K, R> parent) {
+			this.key		  = key;
+			this.resource     = resource;
+			this.weight	      = weight;
+			this.parent	      = parent;
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package org.appkit.registry;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+
+import org.eclipse.swt.widgets.Widget;
+
+/**
+ * Finds the setter registered for the class of a widget or its closest superclass. The result is cached per
+ * widget-class, so the class-hierarchy is only walked once.
+ * <br />
+ * To be used from the display-thread only.
+ */
+final class SetterLookup<S> {
+
+	//~ Instance fields ------------------------------------------------------------------------------------------------
+
+	private final Map<Class<?>, S> setters			    = Maps.newHashMap();
+	private final Map<Class<?>, Optional<S>> resolved = Maps.newHashMap();
+
+	//~ Methods --------------------------------------------------------------------------------------------------------
+
+	public void add(final Class<?extends Widget> clazz, final S setter) {
+		this.setters.put(clazz, setter);
+		this.resolved.clear();
+	}
+
+	/** returns the setter for the widget or null if there is none */
+	public S get(final Widget widget) {
+
+		Optional<S> setter = this.resolved.get(widget.getClass());
+		if (setter == null) {
+
+			S found = null;
+			for (Class<?> clazz = widget.getClass(); (clazz != null) && (found == null);
+					 clazz = clazz.getSuperclass()) {
+				found = this.setters.get(clazz);
+			}
+
+			setter = Optional.fromNullable(found);
+			this.resolved.put(widget.getClass(), setter);
+		}
+
+		return setter.orNull();
+	}
+}
@@ -0,0 +1,217 @@
+package org.appkit.registry;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.appkit.registry.ResourceCache.Entry;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Resource;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Event;
+import org.eclipse.swt.widgets.Listener;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableItem;
+
+/**
+ * Usages of cached resources by the items of tables, set on ranges of items at once. Instead of a DisposeListener per
+ * item there is one listener per table, which releases the usages of all of its items when the table is disposed.
+ * An item can use one resource per slot, e.g. per column.
+ * <p>
+ * Items removed on their own, e.g. with {@link Table#remove(int)}, are disposed without notifying this class. Their
+ * usages are released the next time the table's usages are set or put back, if the table has fewer items than the
+ * last time or a slot holds more items than the table.
+ * <p>
+ * Items of virtual tables cleared with e.g. {@link Table#clear(int)} or {@link Table#clearAll()} lose their
+ * resources without notifying this class either. A cleared item asks for its data again with {@link SWT#SetData}, a
+ * filter on the display releases the item's usages before the table's own listeners set them anew. Items which are
+ * cleared and never shown again keep their usages until they are removed or the table is disposed. So in virtual
+ * tables usages are to be set from the table's SetData-listener, an item which asks for its data counts as cleared.
+ * <br />
+ * To be used from the display-thread only.
+ */
+final class TableItemUsages<K, R extends Resource> {
+
+	//~ Instance fields ------------------------------------------------------------------------------------------------
+
+	private final ResourceCache<K, R> cache;
+	private final ItemSetter<R> setter;
+
+	/* by table: the used entries of the items by slot */
+	private final Map<Table, Map<Integer, Map<TableItem, Entry<K, R>>>> tables = Maps.newIdentityHashMap();
+
+	/* by table: the number of items when its usages were touched last */
+	private final Map<Table, Integer> itemCounts = Maps.newIdentityHashMap();
+
+	/* displays with the filter for cleared items, while they have tables with usages */
+	private final Set<Display> filtered = Sets.newIdentityHashSet();
+	private final Listener disposeListener =
+		new Listener() {
+			@Override
+			public void handleEvent(final Event event) {
+				release((Table) event.widget);
+			}
+		};
+	private final Listener setDataFilter =
+		new Listener() {
+			@Override
+			public void handleEvent(final Event event) {
+				if ((event.widget instanceof Table) && (event.item instanceof TableItem)) {
+					releaseCleared((Table) event.widget, (TableItem) event.item);
+				}
+			}
+		};
+
+	//~ Constructors ---------------------------------------------------------------------------------------------------
+
+	public TableItemUsages(final ResourceCache<K, R> cache, final ItemSetter<R> setter) {
+		this.cache	    = cache;
+		this.setter     = setter;
+	}
+
+	//~ Methods --------------------------------------------------------------------------------------------------------
+
+	/** uses the resource of entry for the slot of the items from start to end (inclusive) */
+	public void set(final Table table, final int start, final int end, final int slot, final Entry<K, R> entry) {
+
+		Map<Integer, Map<TableItem, Entry<K, R>>> slots = this.tables.get(table);
+		if (slots == null) {
+			slots = Maps.newHashMap();
+			this.tables.put(table, slots);
+			table.addListener(SWT.Dispose, this.disposeListener);
+			if (this.filtered.add(table.getDisplay())) {
+				table.getDisplay().addFilter(SWT.SetData, this.setDataFilter);
+			}
+		}
+		this.releaseRemoved(table, slots);
+
+		Map<TableItem, Entry<K, R>> items = slots.get(slot);
+		if (items == null) {
+			items = Maps.newIdentityHashMap();
+			slots.put(slot, items);
+		}
+
+		for (int i = start; i <= end; i++) {
+
+			/* the resource is set again even if the item uses it already, the item may have been reset */
+			TableItem item   = table.getItem(i);
+			Entry<K, R> used = items.put(item, entry);
+			if (used != entry) {
+				this.cache.use(entry);
+			}
+			this.setter.set(item, slot, entry.resource);
+
+			/* release the one used before after it was replaced */
+			if ((used != null) && (used != entry)) {
+				this.cache.release(used);
+			}
+		}
+	}
+
+	/** releases all usages of the items from start to end (inclusive) and unsets their resources */
+	public void putBack(final Table table, final int start, final int end) {
+
+		Map<Integer, Map<TableItem, Entry<K, R>>> slots = this.tables.get(table);
+		if (slots == null) {
+			return;
+		}
+		this.releaseRemoved(table, slots);
+
+		for (final Map.Entry<Integer, Map<TableItem, Entry<K, R>>> slot : slots.entrySet()) {
+			for (int i = start; i <= end; i++) {
+
+				TableItem item   = table.getItem(i);
+				Entry<K, R> used = slot.getValue().remove(item);
+				if (used != null) {
+					this.setter.set(item, slot.getKey(), null);
+					this.cache.release(used);
+				}
+			}
+		}
+	}
+
+	/* releases all usages of the table's items, including items removed in the meantime */
+	private void release(final Table table) {
+
+		Map<Integer, Map<TableItem, Entry<K, R>>> slots = this.tables.remove(table);
+		this.itemCounts.remove(table);
+		if (slots == null) {
+			return;
+		}
+		this.removeFilter(table.getDisplay());
+
+		for (final Map<TableItem, Entry<K, R>> items : slots.values()) {
+			for (final Entry<K, R> used : items.values()) {
+				this.cache.release(used);
+			}
+		}
+	}
+
+	/* releases the usages of an item which was cleared and is about to be set anew, the item has no resources anymore */
+	private void releaseCleared(final Table table, final TableItem item) {
+
+		Map<Integer, Map<TableItem, Entry<K, R>>> slots = this.tables.get(table);
+		if (slots == null) {
+			return;
+		}
+
+		for (final Map<TableItem, Entry<K, R>> items : slots.values()) {
+
+			Entry<K, R> used = items.remove(item);
+			if (used != null) {
+				this.cache.release(used);
+			}
+		}
+	}
+
+	/* removes the filter for cleared items once none of the display's tables has usages */
+	private void removeFilter(final Display display) {
+		for (final Table table : this.tables.keySet()) {
+			if (table.getDisplay() == display) {
+				return;
+			}
+		}
+
+		if (this.filtered.remove(display) && ! display.isDisposed()) {
+			display.removeFilter(SWT.SetData, this.setDataFilter);
+		}
+	}
+
+	/* releases the usages of disposed items, if items may have been removed since the last call */
+	private void releaseRemoved(final Table table, final Map<Integer, Map<TableItem, Entry<K, R>>> slots) {
+
+		int count		= table.getItemCount();
+		Integer before  = this.itemCounts.put(table, count);
+		boolean removed = (before != null) && (count < before);
+		for (final Map<TableItem, Entry<K, R>> items : slots.values()) {
+			removed |= (items.size() > count);
+		}
+		if (! removed) {
+			return;
+		}
+
+		for (final Map<TableItem, Entry<K, R>> items : slots.values()) {
+
+			Iterator<Map.Entry<TableItem, Entry<K, R>>> iterator = items.entrySet().iterator();
+			while (iterator.hasNext()) {
+
+				Map.Entry<TableItem, Entry<K, R>> usage = iterator.next();
+				if (usage.getKey().isDisposed()) {
+					iterator.remove();
+					this.cache.release(usage.getValue());
+				}
+			}
+		}
+	}
+
+	//~ Inner Interfaces -----------------------------------------------------------------------------------------------
+
+	/** sets a resource on a slot of an item, null unsets it */
+	interface ItemSetter<R> {
+		void set(final TableItem item, final int slot, final R resource);
+	}
+}
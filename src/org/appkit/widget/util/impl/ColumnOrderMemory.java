@@ -8,8 +8,8 @@ import com.google.common.primitives.Ints;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
-import org.appkit.concurrent.SWTSyncedRunnable;
 import org.appkit.concurrent.Throttle;
+import org.appkit.concurrent.UIDispatcher;
 import org.appkit.preferences.PrefStore;
 
 import org.eclipse.swt.events.ControlEvent;
@@ -102,7 +102,7 @@ public final class ColumnOrderMemory {
 				}
 			};
 
-		this.throttle.throttledExecution(new SWTSyncedRunnable(Display.getCurrent(), runnable));
+		this.throttle.throttledExecution(UIDispatcher.forDisplay(Display.getCurrent()).wrap(runnable));
 	}
 
 	//~ Inner Classes --------------------------------------------------------------------------------------------------
@@ -7,8 +7,8 @@ import com.google.common.collect.Lists;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
-import org.appkit.concurrent.SWTSyncedRunnable;
 import org.appkit.concurrent.Throttle;
+import org.appkit.concurrent.UIDispatcher;
 import org.appkit.preferences.PrefStore;
 
 import org.eclipse.swt.events.ControlEvent;
@@ -108,7 +108,7 @@ public final class ColumnSizeMemory {
 				}
 			};
 
-		this.throttle.throttledExecution(new SWTSyncedRunnable(Display.getCurrent(), runnable));
+		this.throttle.throttledExecution(UIDispatcher.forDisplay(Display.getCurrent()).wrap(runnable));
 	}
 
 	//~ Inner Classes --------------------------------------------------------------------------------------------------
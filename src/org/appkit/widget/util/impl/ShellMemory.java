@@ -3,12 +3,14 @@ package org.appkit.widget.util.impl;
 import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
-import org.appkit.concurrent.SWTSyncedRunnable;
 import org.appkit.concurrent.Throttle;
+import org.appkit.concurrent.UIDispatcher;
 import org.appkit.preferences.PrefStore;
 
 import org.eclipse.swt.events.ControlEvent;
@@ -123,22 +125,26 @@ public final class ShellMemory {
 				new Runnable() {
 					@Override
 					public void run() {
+						Map<String, String> values = Maps.newHashMap();
+
 						L.debug("writing out maximized {} to key {}", maximizedString, memoryKey);
-						prefStore.store(memoryKey + ".maximized", maximizedString);
+						values.put(memoryKey + ".maximized", maximizedString);
 
 						if (positionString != null) {
 							L.debug("writing out position {} to key {}", positionString, memoryKey);
-							prefStore.store(memoryKey + ".position", positionString);
+							values.put(memoryKey + ".position", positionString);
 						}
 
 						if (sizeString != null) {
 							L.debug("writing out size {} to key {}", sizeString, memoryKey);
-							prefStore.store(memoryKey + ".size", sizeString);
+							values.put(memoryKey + ".size", sizeString);
 						}
+
+						prefStore.storeAll(values);
 					}
 				};
 
-			throttle.throttledExecution(new SWTSyncedRunnable(Display.getCurrent(), runnable));
+			throttle.throttledExecution(UIDispatcher.forDisplay(Display.getCurrent()).wrap(runnable));
 
 		}
 	}
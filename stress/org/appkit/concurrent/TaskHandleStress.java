@@ -0,0 +1,144 @@
+package org.appkit.concurrent;
+
+import com.google.common.collect.Maps;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.appkit.concurrent.SmartExecutor.TaskHandle;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.ZZ_Result;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+/**
+ * {@link TaskHandle#cancel()} racing with the scheduler-thread taking the due task or with another cancel. A task is
+ * either cancelled or run, never both and never neither.
+ *
+ * <pre>ant stress -Dstress=TaskHandleStress</pre>
+ */
+public class TaskHandleStress {
+
+	//~ Static fields/initializers -------------------------------------------------------------------------------------
+
+	private static final Runnable NOOP =
+		new Runnable() {
+			@Override
+			public void run() {}
+		};
+
+	//~ Inner Classes --------------------------------------------------------------------------------------------------
+
+	/**
+	 * The result is whether cancel succeeded and whether the scheduler took the task. A second, later task is
+	 * queued, so taking never blocks once the first one was cancelled.
+	 */
+	@JCStressTest
+	@Outcome(id = "true, false", expect = ACCEPTABLE, desc = "cancelled before it was taken")
+	@Outcome(id = "false, true", expect = ACCEPTABLE, desc = "taken before it was cancelled")
+	@Outcome(id = "true, true", expect = FORBIDDEN, desc = "cancelled and run")
+	@Outcome(id = "false, false", expect = FORBIDDEN, desc = "neither cancelled nor run")
+	@State
+	public static class CancelVersusTake {
+
+		private final TaskQueue taskQueue = new DelayTaskQueue();
+		private final SmartRunnable task  = new SmartRunnable(NOOP, 0, TimeUnit.NANOSECONDS, false, false);
+		private final TaskHandle handle;
+
+		public CancelVersusTake() {
+			this.taskQueue.put(this.task);
+			this.taskQueue.put(new SmartRunnable(NOOP, 0, TimeUnit.NANOSECONDS, false, false));
+			this.handle = new TaskHandle(this.task, this.taskQueue, Maps.<Runnable, SmartRunnable>newConcurrentMap());
+		}
+
+		@Actor
+		public void cancel(final ZZ_Result r) {
+			r.r1 = this.handle.cancel();
+		}
+
+		@Actor
+		public void scheduler(final ZZ_Result r) {
+			try {
+				r.r2 = this.taskQueue.take() == this.task;
+			} catch (final InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	/** The result is whether each of two concurrent cancels succeeded, exactly one has to */
+	@JCStressTest
+	@Outcome(id = { "true, false", "false, true" }, expect = ACCEPTABLE, desc = "one cancel succeeded")
+	@Outcome(expect = FORBIDDEN, desc = "both or none succeeded")
+	@State
+	public static class CancelVersusCancel {
+
+		private final TaskQueue taskQueue = new DelayTaskQueue();
+		private final SmartRunnable task  = new SmartRunnable(NOOP, 1, TimeUnit.HOURS, false, false);
+		private final TaskHandle first;
+		private final TaskHandle second;
+
+		public CancelVersusCancel() {
+			this.taskQueue.put(this.task);
+			this.first	    = new TaskHandle(this.task, this.taskQueue, Maps.<Runnable, SmartRunnable>newConcurrentMap());
+			this.second     = new TaskHandle(this.task, this.taskQueue, Maps.<Runnable, SmartRunnable>newConcurrentMap());
+		}
+
+		@Actor
+		public void cancelFirst(final ZZ_Result r) {
+			r.r1 = this.first.cancel();
+		}
+
+		@Actor
+		public void cancelSecond(final ZZ_Result r) {
+			r.r2 = this.second.cancel();
+		}
+	}
+
+	/**
+	 * A repeating task is cancelled while it runs, racing with its re-scheduling. The result is whether cancel
+	 * succeeded and whether the task is still scheduled afterwards.
+	 */
+	@JCStressTest
+	@Outcome(id = "true, false", expect = ACCEPTABLE, desc = "cancelled before or after it was re-scheduled")
+	@Outcome(id = "true, true", expect = FORBIDDEN, desc = "cancelled, but re-scheduled anyway")
+	@Outcome(expect = FORBIDDEN, desc = "cancel failed")
+	@State
+	public static class CancelVersusReschedule {
+
+		private final TaskQueue taskQueue = new DelayTaskQueue();
+		private final SmartRunnable task  = new SmartRunnable(NOOP, 1, TimeUnit.HOURS, true, false);
+		private final TaskHandle handle;
+
+		public CancelVersusReschedule() {
+
+			ConcurrentMap<Runnable, SmartRunnable> repeatingTasks = Maps.newConcurrentMap();
+			repeatingTasks.put(NOOP, this.task);
+
+			/* taken by the scheduler-thread and running */
+			this.task.compareAndSetState(SmartRunnable.PENDING, SmartRunnable.EXPIRED);
+			this.handle = new TaskHandle(this.task, this.taskQueue, repeatingTasks);
+		}
+
+		@Actor
+		public void cancel(final ZZ_Result r) {
+			r.r1 = this.handle.cancel();
+		}
+
+		@Actor
+		public void reschedule() {
+			SmartExecutor.reschedule(this.task, this.taskQueue);
+		}
+
+		@Arbiter
+		public void arbiter(final ZZ_Result r) {
+			r.r2 = this.task.getState() != SmartRunnable.CANCELLED;
+		}
+	}
+}
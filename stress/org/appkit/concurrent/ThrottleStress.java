@@ -0,0 +1,177 @@
+package org.appkit.concurrent;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.appkit.concurrent.SmartExecutor.SimpleThrottle;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.II_Result;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+/**
+ * A call of {@link SimpleThrottle#throttledExecution(Runnable)} racing with the scheduler-thread closing the running
+ * series. The last Runnable has to run exactly once, whichever series picks it up.
+ * <p>
+ * The throttle has no delay, one actor plays the scheduler-thread by running the due slot, the arbiter runs the
+ * slots queued in the meantime. The result is how often the first and the second Runnable ran.
+ *
+ * <pre>ant stress -Dstress=ThrottleStress</pre>
+ */
+public class ThrottleStress {
+
+	//~ Inner Classes --------------------------------------------------------------------------------------------------
+
+	@JCStressTest
+	@Outcome(id = "1, 1", expect = ACCEPTABLE, desc = "the series ran the first, the second one ran afterwards")
+	@Outcome(id = "0, 1", expect = ACCEPTABLE, desc = "the second replaced the first before the series ended")
+	@Outcome(id = "1, 0", expect = FORBIDDEN, desc = "the second Runnable got lost")
+	@Outcome(expect = FORBIDDEN, desc = "a Runnable ran twice")
+	@State
+	public static class TrailingEdge extends ThrottleState {
+		public TrailingEdge() {
+			super(false);
+		}
+
+		@Actor
+		public void caller() {
+			this.throttle.throttledExecution(this.second);
+		}
+
+		@Actor
+		public void scheduler() {
+			this.runDueSlot();
+		}
+
+		@Arbiter
+		public void arbiter(final II_Result r) {
+			this.drain(r);
+		}
+	}
+
+	@JCStressTest
+	@Outcome(id = "1, 1", expect = ACCEPTABLE, desc = "the first ran on the leading edge, the second once")
+	@Outcome(id = "1, 0", expect = FORBIDDEN, desc = "the second Runnable got lost")
+	@Outcome(expect = FORBIDDEN, desc = "a Runnable ran twice or the leading edge was skipped")
+	@State
+	public static class BothEdges extends ThrottleState {
+		public BothEdges() {
+			super(true);
+		}
+
+		@Actor
+		public void caller() {
+			this.throttle.throttledExecution(this.second);
+		}
+
+		@Actor
+		public void scheduler() {
+			this.runDueSlot();
+		}
+
+		@Arbiter
+		public void arbiter(final II_Result r) {
+			this.drain(r);
+		}
+	}
+
+	/* a throttle which ran its first Runnable into a series, runnables are executed on the calling thread */
+	private abstract static class ThrottleState {
+
+		final AtomicInteger firstRuns  = new AtomicInteger();
+		final AtomicInteger secondRuns = new AtomicInteger();
+		final Runnable first		   =
+			new Runnable() {
+				@Override
+				public void run() {
+					ThrottleState.this.firstRuns.incrementAndGet();
+				}
+			};
+
+		final Runnable second =
+			new Runnable() {
+				@Override
+				public void run() {
+					ThrottleState.this.secondRuns.incrementAndGet();
+				}
+			};
+
+		final PollingTaskQueue taskQueue = new PollingTaskQueue();
+		final SimpleThrottle throttle;
+
+		ThrottleState(final boolean leadingEdge) {
+			this.throttle =
+				new SimpleThrottle(
+					new Executor() {
+						@Override
+						public void execute(final Runnable command) {
+							command.run();
+						}
+					},
+					this.taskQueue,
+					0,
+					TimeUnit.NANOSECONDS,
+					leadingEdge,
+					true);
+			this.throttle.throttledExecution(this.first);
+		}
+
+		void runDueSlot() {
+
+			SmartRunnable slot = this.taskQueue.poll();
+			if (slot != null) {
+				slot.run();
+			}
+		}
+
+		void drain(final II_Result r) {
+
+			SmartRunnable slot;
+			while ((slot = this.taskQueue.poll()) != null) {
+				slot.run();
+			}
+			r.r1 = this.firstRuns.get();
+			r.r2 = this.secondRuns.get();
+		}
+	}
+
+	/* due slots without waiting for their deadline, as the throttle has no delay */
+	private static final class PollingTaskQueue implements TaskQueue {
+
+		private final Queue<SmartRunnable> queue = new ConcurrentLinkedQueue<SmartRunnable>();
+
+		@Override
+		public void put(final SmartRunnable task) {
+			this.queue.add(task);
+		}
+
+		@Override
+		public void remove(final SmartRunnable task) {
+			this.queue.remove(task);
+		}
+
+		@Override
+		public SmartRunnable take() {
+			throw new UnsupportedOperationException();
+		}
+
+		SmartRunnable poll() {
+
+			SmartRunnable task = this.queue.poll();
+			if ((task != null) && ! task.compareAndSetState(SmartRunnable.PENDING, SmartRunnable.EXPIRED)) {
+				return this.poll();
+			}
+
+			return task;
+		}
+	}
+}
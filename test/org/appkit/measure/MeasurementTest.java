@@ -0,0 +1,226 @@
+package org.appkit.measure;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MeasurementTest {
+
+	//~ Static fields/initializers -------------------------------------------------------------------------------------
+
+	private static final int THREADS = 8;
+	private static final int ROUNDS  = 2000;
+	private static final int NESTING = 3;
+
+	//~ Methods --------------------------------------------------------------------------------------------------------
+
+	@After
+	public void removeListeners() {
+		Measurement.setListener(null);
+	}
+
+	@Test
+	public void nestedMeasurementsReportDepthAndOrder() {
+
+		final List<String> events = Lists.newArrayList();
+		Measurement.setListener(
+			new Measurement.Listener() {
+				@Override
+				public void notifyStart(final Measurement data) {
+					events.add("start " + data.getName() + "@" + data.getDepth());
+				}
+
+				@Override
+				public void notifyData(final Measurement data) {
+					events.add("stop " + data.getName() + "@" + data.getDepth());
+				}
+			});
+
+		Measurement.start(true, "outer");
+		Measurement.start(true, "inner");
+		assertEquals("inner", Measurement.stop().getName());
+		assertEquals("outer", Measurement.stop().getName());
+		assertNull(Measurement.stop());
+
+		assertEquals(Lists.newArrayList("start outer@0", "start inner@1", "stop inner@1", "stop outer@0"), events);
+	}
+
+	@Test
+	public void switchedOffMeasurementsDontNotify() {
+
+		final AtomicInteger notified = new AtomicInteger();
+		Measurement.setListener(new CountingListener(notified));
+
+		Measurement.start(false, "off");
+		assertNull(Measurement.stop(false));
+		Measurement.record(false, "off", null, 0, 1);
+
+		assertEquals(0, notified.get());
+	}
+
+	@Test
+	public void recordedMeasurementKeepsItsTiming() {
+
+		final AtomicReference<Measurement> recorded = new AtomicReference<Measurement>();
+		Measurement.setListener(
+			new Measurement.Listener() {
+				@Override
+				public void notifyStart(final Measurement data) {}
+
+				@Override
+				public void notifyData(final Measurement data) {
+					recorded.set(data.copy());
+				}
+			});
+
+		Measurement.record(true, "recorded", "data", 1000, 51000);
+
+		assertEquals("recorded", recorded.get().getName());
+		assertEquals("data", recorded.get().getData());
+		assertEquals(1000, recorded.get().getStart());
+		assertEquals(50000, recorded.get().getDurationNanos());
+	}
+
+	@Test
+	public void recordedMeasurementIsntNested() {
+
+		final List<String> events = Lists.newArrayList();
+		Measurement.setListener(
+			new Measurement.Listener() {
+				@Override
+				public void notifyStart(final Measurement data) {}
+
+				@Override
+				public void notifyData(final Measurement data) {
+					events.add(data.getName() + "@" + data.getDepth() + (data.isRecorded() ? " recorded" : ""));
+				}
+			});
+
+		Measurement.start(true, "outer");
+		Measurement.start(true, "inner");
+		Measurement.record(true, "recorded", null, 0, 1);
+		Measurement.stop();
+		Measurement.stop();
+		assertNull(Measurement.stop());
+
+		assertEquals(Lists.newArrayList("recorded@0 recorded", "inner@1", "outer@0"), events);
+	}
+
+	/**
+	 * Threads measure nested sections concurrently. Every thread has to see exactly its own measurements, in the
+	 * order it started and stopped them, and pooled Measurement objects must never be handed to another thread.
+	 */
+	@Test
+	public void threadsDontSeeEachOthersMeasurements() throws Exception {
+
+		final ConcurrentMap<Measurement, Thread> owners = Maps.newConcurrentMap();
+		final AtomicReference<String> failure		    = new AtomicReference<String>();
+		final AtomicInteger stopped					    = new AtomicInteger();
+		Measurement.setListener(
+			new Measurement.Listener() {
+				@Override
+				public void notifyStart(final Measurement data) {
+					this.check(data);
+				}
+
+				@Override
+				public void notifyData(final Measurement data) {
+					this.check(data);
+					if (data.getDurationNanos() < 0) {
+						failure.compareAndSet(null, "negative duration of " + data);
+					}
+					stopped.incrementAndGet();
+				}
+
+				private void check(final Measurement data) {
+
+					Thread owner = owners.putIfAbsent(data, Thread.currentThread());
+					if ((owner != null) && (owner != Thread.currentThread())) {
+						failure.compareAndSet(null, data + " was used by " + owner + " and " + Thread.currentThread());
+					}
+					if (! data.getName().startsWith(Thread.currentThread().getName() + "/" + data.getDepth())) {
+						failure.compareAndSet(null, Thread.currentThread().getName() + " saw " + data.getName());
+					}
+				}
+			});
+
+		final Map<String, Throwable> errors = Maps.newConcurrentMap();
+		final CyclicBarrier start			= new CyclicBarrier(THREADS);
+		final CountDownLatch done			= new CountDownLatch(THREADS);
+		for (int t = 0; t < THREADS; t++) {
+
+			Thread thread =
+				new Thread("measuring-" + t) {
+					@Override
+					public void run() {
+						try {
+							start.await();
+							for (int round = 0; round < ROUNDS; round++) {
+								measureNested(0, round);
+							}
+						} catch (final Throwable e) {
+							errors.put(this.getName(), e);
+						} finally {
+							done.countDown();
+						}
+					}
+				};
+			thread.start();
+		}
+		done.await();
+
+		assertTrue(errors.toString(), errors.isEmpty());
+		assertNull(failure.get(), failure.get());
+		assertEquals(THREADS * ROUNDS * NESTING, stopped.get());
+	}
+
+	/* starts a measurement per level of nesting and checks stop returns them innermost first */
+	private static void measureNested(final int depth, final int round) {
+
+		String name = Thread.currentThread().getName() + "/" + depth + "/" + round;
+		Measurement.start(true, name, round);
+		if ((depth + 1) < NESTING) {
+			measureNested(depth + 1, round);
+		}
+
+		Measurement stopped = Measurement.stop();
+		assertEquals(name, stopped.getName());
+		assertEquals(round, stopped.getData());
+		assertEquals(depth, stopped.getDepth());
+	}
+
+	//~ Inner Classes --------------------------------------------------------------------------------------------------
+
+	private static final class CountingListener implements Measurement.Listener {
+
+		private final AtomicInteger notified;
+
+		private CountingListener(final AtomicInteger notified) {
+			this.notified = notified;
+		}
+
+		@Override
+		public void notifyStart(final Measurement data) {
+			this.notified.incrementAndGet();
+		}
+
+		@Override
+		public void notifyData(final Measurement data) {
+			this.notified.incrementAndGet();
+		}
+	}
+}
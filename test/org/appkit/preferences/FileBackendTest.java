@@ -0,0 +1,305 @@
+package org.appkit.preferences;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.lang.ProcessBuilder.Redirect;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.appkit.preferences.PrefStoreBackend.ChangeListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FileBackendTest {
+
+	//~ Static fields/initializers -------------------------------------------------------------------------------------
+
+	private static final long TIMEOUT_MILLIS = 10000;
+
+	//~ Instance fields ------------------------------------------------------------------------------------------------
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+	private final List<FileBackend> opened = Lists.newArrayList();
+	private File file;
+
+	//~ Methods --------------------------------------------------------------------------------------------------------
+
+	@Before
+	public void createFile() {
+		this.file = new File(this.folder.getRoot(), "preferences.dat");
+	}
+
+	@After
+	public void closeBackends() {
+		for (final FileBackend backend : this.opened) {
+			backend.close();
+		}
+	}
+
+	@Test
+	public void recordsAreReplayedWhenOpenedAgain() {
+
+		FileBackend backend = this.open();
+		backend.store("a", "1");
+		backend.store("b", "2");
+		backend.remove("a");
+		backend.store("c", "");
+		backend.store("b", "3");
+		backend.close();
+
+		backend = this.open();
+		assertEquals(ImmutableMap.of("b", "3", "c", ""), backend.getAll(backend.getKeys()));
+	}
+
+	@Test
+	public void incompleteRecordAtTheEndIsDiscarded() throws IOException {
+
+		FileBackend backend = this.open();
+		backend.store("a", "1");
+		backend.store("b", "2");
+		backend.close();
+
+		/* the header of a record of 100 bytes, followed by 3 of them */
+		long length = this.file.length();
+		this.append(new byte[] { 0, 0, 0, 100, 0, 0, 0, 0, 1, 2, 3 });
+
+		backend = this.open();
+		assertEquals(ImmutableMap.of("a", "1", "b", "2"), backend.getAll(backend.getKeys()));
+		assertEquals(length, this.file.length());
+
+		/* the following records aren't hidden behind the discarded one */
+		backend.store("c", "3");
+		backend.close();
+		backend = this.open();
+		assertEquals("3", backend.get("c"));
+	}
+
+	@Test
+	public void damagedRecordAtTheEndIsDiscarded() throws IOException {
+
+		FileBackend backend = this.open();
+		backend.store("a", "1");
+		long length = this.file.length();
+		backend.store("b", "2");
+		backend.close();
+
+		this.flipLastByte();
+
+		backend = this.open();
+		assertEquals(ImmutableMap.of("a", "1"), backend.getAll(backend.getKeys()));
+		assertEquals(length, this.file.length());
+	}
+
+	@Test
+	public void batchIsReplayedCompletelyOrNotAtAll() throws IOException {
+
+		FileBackend backend = this.open();
+		backend.store("a", "1");
+		long length = this.file.length();
+		backend.storeAll(ImmutableMap.of("x", "1", "y", "2", "z", "3"));
+		backend.close();
+
+		/* complete, it is replayed */
+		backend = this.open();
+		assertEquals(4, backend.getKeys().size());
+		backend.close();
+
+		/* cut off by a crash, none of it is */
+		this.truncate(this.file.length() - 1);
+		backend = this.open();
+		assertEquals(ImmutableMap.of("a", "1"), backend.getAll(backend.getKeys()));
+		assertEquals(length, this.file.length());
+	}
+
+	@Test
+	public void outdatedRecordsAreCompactedAway() {
+
+		FileBackend backend = this.open();
+		backend.store("other", "x");
+		long length = this.file.length();
+		for (int i = 0; i < 5000; i++) {
+			backend.store("counter", String.valueOf(i));
+		}
+
+		/* compacted once 1000 records are outdated, so it never holds more than 1000 counters of 24 bytes */
+		assertTrue(this.file.length() + " bytes", this.file.length() <= (length + (1000 * 24)));
+		assertEquals("4999", backend.get("counter"));
+		backend.close();
+
+		backend = this.open();
+		assertEquals(ImmutableMap.of("counter", "4999", "other", "x"), backend.getAll(backend.getKeys()));
+	}
+
+	@Test
+	public void storesAndRemovalsAreWrittenAsOneBatch() throws IOException {
+
+		FileBackend backend = this.open();
+		backend.storeAll(ImmutableMap.of("a", "1", "b", "2"));
+		long length = this.file.length();
+		backend.storeAndRemoveAll(ImmutableMap.of("a", "3", "c", "4"), ImmutableSet.of("b", "missing"));
+		assertEquals(ImmutableMap.of("a", "3", "c", "4"), backend.getAll(ImmutableList.of("a", "b", "c")));
+		backend.close();
+
+		this.truncate(this.file.length() - 1);
+		backend = this.open();
+		assertEquals(ImmutableMap.of("a", "1", "b", "2"), backend.getAll(backend.getKeys()));
+		assertEquals(length, this.file.length());
+	}
+
+	@Test
+	public void prefixIsRemovedAsOneBatch() throws IOException {
+
+		FileBackend backend = this.open();
+		backend.storeAll(ImmutableMap.of("table.a", "1", "table.b", "2", "tablex", "3"));
+		backend.removePrefix("table.");
+		assertEquals(ImmutableSet.of("tablex"), backend.getKeys());
+		backend.close();
+
+		this.truncate(this.file.length() - 1);
+		backend = this.open();
+		assertEquals(3, backend.getKeys().size());
+	}
+
+	@Test
+	public void unchangedValuesArentWrittenAgain() {
+
+		FileBackend backend = this.open();
+		backend.storeAll(ImmutableMap.of("a", "1", "b", "2"));
+		long length = this.file.length();
+
+		backend.storeAll(ImmutableMap.of("a", "1", "b", "2"));
+		backend.store("a", "1");
+		backend.remove("missing");
+		backend.removePrefix("missing");
+		assertEquals(length, this.file.length());
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void failedWriteThrows() {
+
+		FileBackend backend = this.open();
+		backend.close();
+		backend.store("a", "1");
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void fileIsOpenedOncePerJvm() {
+		this.open();
+		new FileBackend(new File(this.folder.getRoot(), "./preferences.dat"));
+	}
+
+	@Test
+	public void changesOfOtherProcessesAreReported() throws Exception {
+
+		FileBackend backend = this.open();
+		backend.store("a", "1");
+
+		final BlockingQueue<ImmutableSet<String>> changes = new LinkedBlockingQueue<ImmutableSet<String>>();
+		backend.setChangeListener(
+			new ChangeListener() {
+				@Override
+				public void notifyExternalChange(final ImmutableSet<String> keys) {
+					changes.add(keys);
+				}
+			});
+
+		Process process =
+			new ProcessBuilder(
+				new File(System.getProperty("java.home"), "bin/java").getPath(),
+				"-cp",
+				System.getProperty("java.class.path"),
+				OtherProcess.class.getName(),
+				this.file.getPath(),
+				"b",
+				"2").redirectErrorStream(true).redirectOutput(Redirect.INHERIT).start();
+		assertEquals(0, process.waitFor());
+
+		/* the listener may be notified more than once, e.g. for the file being written and closed */
+		Set<String> changed = Sets.newHashSet();
+		long deadline	    = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while (! changed.contains("b") && (System.currentTimeMillis() < deadline)) {
+
+			ImmutableSet<String> keys = changes.poll(10, TimeUnit.MILLISECONDS);
+			if (keys != null) {
+				changed.addAll(keys);
+			}
+		}
+		assertEquals(ImmutableSet.of("b"), changed);
+		assertEquals("2", backend.get("b"));
+	}
+
+	private FileBackend open() {
+
+		FileBackend backend = new FileBackend(this.file);
+		this.opened.add(backend);
+
+		return backend;
+	}
+
+	private void append(final byte bytes[]) throws IOException {
+
+		RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+		try {
+			raf.seek(raf.length());
+			raf.write(bytes);
+		} finally {
+			raf.close();
+		}
+	}
+
+	private void flipLastByte() throws IOException {
+
+		RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+		try {
+			raf.seek(raf.length() - 1);
+
+			int last = raf.read();
+			raf.seek(raf.length() - 1);
+			raf.write(last ^ 0xFF);
+		} finally {
+			raf.close();
+		}
+	}
+
+	private void truncate(final long length) throws IOException {
+
+		RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+		try {
+			raf.setLength(length);
+		} finally {
+			raf.close();
+		}
+	}
+
+	//~ Inner Classes --------------------------------------------------------------------------------------------------
+
+	/** stores a value in a file from another JVM: <code>file key value</code> */
+	static final class OtherProcess {
+		public static void main(final String args[]) {
+
+			FileBackend backend = new FileBackend(new File(args[0]));
+			backend.store(args[1], args[2]);
+			backend.close();
+		}
+	}
+}
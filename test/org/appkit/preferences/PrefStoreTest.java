@@ -0,0 +1,353 @@
+package org.appkit.preferences;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.appkit.concurrent.SmartExecutor;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PrefStoreTest {
+
+	//~ Static fields/initializers -------------------------------------------------------------------------------------
+
+	private static final long TIMEOUT_MILLIS = 10000;
+
+	//~ Instance fields ------------------------------------------------------------------------------------------------
+
+	private final SmartExecutor executor = SmartExecutor.start();
+	private final MapBackend backend     = new MapBackend();
+
+	//~ Methods --------------------------------------------------------------------------------------------------------
+
+	@After
+	public void shutdownExecutor() {
+		this.backend.failing = false;
+		this.executor.shutdownNow();
+	}
+
+	@Test
+	public void writeThroughStoresImmediately() {
+
+		PrefStore store = new PrefStore(this.backend);
+		store.store("a", "1");
+		store.remove("missing");
+
+		assertEquals("1", this.backend.get("a"));
+		assertEquals(Lists.newArrayList("store a=1", "remove missing"), this.backend.calls);
+	}
+
+	@Test
+	public void writeBehindCoalescesWritesUntilTheFlush() {
+
+		this.backend.store("c", "3");
+		this.backend.calls.clear();
+
+		PrefStore store = PrefStore.createWriteBehind(this.backend, this.executor, 1, TimeUnit.HOURS);
+		store.store("a", "1");
+		store.store("a", "2");
+		store.store("b", true);
+		store.remove("c");
+
+		/* read from memory before they are written */
+		assertEquals("2", store.get("a", null));
+		assertTrue(store.get("b", false));
+		assertEquals(null, store.get("c", null));
+		assertTrue(this.backend.calls.isEmpty());
+
+		store.flush();
+		assertEquals(Lists.newArrayList("storeAndRemoveAll {a=2, b=true} [c]"), this.backend.calls);
+		assertEquals(ImmutableMap.of("a", "2", "b", "true"), this.backend.getAll(this.backend.getKeys()));
+
+		/* nothing is pending anymore */
+		store.flush();
+		assertEquals(1, this.backend.calls.size());
+	}
+
+	@Test
+	public void writeBehindFlushesAfterTheInterval() throws InterruptedException {
+
+		PrefStore store = PrefStore.createWriteBehind(this.backend, this.executor, 10, TimeUnit.MILLISECONDS);
+		store.store("a", "1");
+
+		long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while ((this.backend.get("a") == null) && (System.currentTimeMillis() < deadline)) {
+			Thread.sleep(1);
+		}
+		assertEquals("1", this.backend.get("a"));
+	}
+
+	@Test
+	public void failedFlushKeepsTheWritesPending() {
+
+		PrefStore store = PrefStore.createWriteBehind(this.backend, this.executor, 1, TimeUnit.HOURS);
+		store.store("a", "1");
+
+		this.backend.failing = true;
+		try {
+			store.flush();
+			fail("flushed to a failing backend");
+		} catch (final IllegalStateException e) {
+			/* expected */
+		}
+		assertEquals(null, this.backend.get("a"));
+		assertEquals("1", store.get("a", null));
+
+		this.backend.failing = false;
+		store.flush();
+		assertEquals("1", this.backend.get("a"));
+	}
+
+	@Test
+	public void failedWriteThroughKeepsTheOldValue() {
+
+		PrefStore store = new PrefStore(this.backend);
+		store.store("a", "1");
+
+		this.backend.failing = true;
+		try {
+			store.store("a", "2");
+			fail("stored to a failing backend");
+		} catch (final IllegalStateException e) {
+			/* expected */
+		}
+		assertEquals("1", store.get("a", null));
+	}
+
+	@Test
+	public void bulkWritesGoToTheBackendAsOneCall() {
+
+		this.backend.store("table.a", "1");
+		this.backend.store("table.b", "2");
+		this.backend.store("tablex", "3");
+		this.backend.calls.clear();
+
+		PrefStore store = new PrefStore(this.backend);
+		store.storeAll(ImmutableMap.of("c", "4", "d", "5"));
+		assertEquals(Lists.newArrayList("storeAll {c=4, d=5}"), this.backend.calls);
+
+		/* the in-memory backend removes them key by key */
+		store.removePrefix("table.");
+		assertEquals(ImmutableMap.of("c", "4", "d", "5", "tablex", "3"), store.asMap());
+		assertEquals(store.asMap(), this.backend.getAll(this.backend.getKeys()));
+	}
+
+	@Test
+	public void removedPrefixIsFlushedAsOneBatch() {
+
+		this.backend.store("table.a", "1");
+		this.backend.store("table.b", "2");
+		this.backend.store("tablex", "3");
+		this.backend.calls.clear();
+
+		PrefStore store = PrefStore.createWriteBehind(this.backend, this.executor, 1, TimeUnit.HOURS);
+		store.removePrefix("table.");
+		store.store("table.c", "4");
+		assertEquals(ImmutableMap.of("table.c", "4"), store.getPrefixMap("table."));
+
+		store.flush();
+		assertEquals(Lists.newArrayList("storeAndRemoveAll {table.c=4} [table.a, table.b]"), this.backend.calls);
+	}
+
+	@Test
+	public void defaultBulkOperationsUseTheSingleKeyOnes() {
+
+		this.backend.store("a", "1");
+		assertEquals(ImmutableMap.of("a", "1"), this.backend.getAll(ImmutableList.of("a", "missing", "a")));
+
+		this.backend.store("table.a", "1");
+		this.backend.store("table.b", "1");
+		this.backend.calls.clear();
+		this.backend.removePrefix("table.");
+		assertEquals(Lists.newArrayList("remove table.a", "remove table.b"), this.backend.calls);
+	}
+
+	@Test
+	public void listenersAreNotifiedAboutChangedValues() {
+
+		PrefStore store			   = new PrefStore(this.backend);
+		RecordingListener listener = new RecordingListener();
+		store.addKeyListener("a", listener);
+		store.addPrefixListener("table.", listener);
+		store.addKeyListener(
+			"a",
+			new PrefStore.Listener() {
+				@Override
+				public void notifyChanged(final String key, final String value) {
+					throw new IllegalStateException("failing listener");
+				}
+			});
+
+		store.store("a", "1");
+		store.store("a", "1");
+		store.store("b", "2");
+		store.storeAll(ImmutableMap.of("table.x", "3", "tablex", "4"));
+		store.remove("a");
+		store.removePrefix("table.");
+		assertEquals(Lists.newArrayList("a=1", "table.x=3", "a=null", "table.x=null"), listener.changes);
+
+		store.removeListener(listener);
+		store.store("a", "5");
+		assertEquals(4, listener.changes.size());
+	}
+
+	@Test
+	public void externalChangesAreReadAgain() {
+
+		this.backend.store("a", "1");
+		this.backend.store("b", "2");
+
+		PrefStore store			   = new PrefStore(this.backend);
+		RecordingListener listener = new RecordingListener();
+		store.addPrefixListener("", listener);
+
+		/* changed by someone else, c doesn't count as it wasn't changed after all */
+		this.backend.store("a", "3");
+		this.backend.remove("b");
+		this.backend.store("d", "4");
+		this.backend.fireExternalChange(ImmutableSet.of("a", "b", "c", "d"));
+
+		assertEquals(ImmutableMap.of("a", "3", "d", "4"), store.asMap());
+		assertEquals(ImmutableSet.of("a=3", "b=null", "d=4"), ImmutableSet.copyOf(listener.changes));
+	}
+
+	@Test
+	public void pendingWritesWinOverExternalChanges() {
+
+		this.backend.store("a", "1");
+
+		PrefStore store			   = PrefStore.createWriteBehind(this.backend, this.executor, 1, TimeUnit.HOURS);
+		RecordingListener listener = new RecordingListener();
+		store.store("a", "local");
+		store.addKeyListener("a", listener);
+
+		this.backend.store("a", "external");
+		this.backend.fireExternalChange(ImmutableSet.of("a"));
+		assertEquals("local", store.get("a", null));
+		assertTrue(listener.changes.isEmpty());
+
+		store.flush();
+		assertEquals("local", this.backend.get("a"));
+	}
+
+	@Test
+	public void readsAreServedFromTheSnapshot() {
+
+		this.backend.store("number", "42");
+		this.backend.store("flag", "true");
+		this.backend.store("text", "x");
+		this.backend.store("huge", "99999999999999999999");
+
+		PrefStore store = new PrefStore(this.backend);
+		assertEquals(42, store.get("number", 0L));
+		assertEquals(7, store.get("text", 7L));
+		assertEquals(7, store.get("huge", 7L));
+		assertTrue(store.get("flag", false));
+		assertTrue(store.get("number", true));
+		assertEquals("x", store.get("text", null));
+
+		/* changed behind the back of the store, which doesn't read it again */
+		this.backend.store("number", "0");
+		assertEquals(42, store.get("number", 0L));
+
+		store.store("number", 43);
+		assertEquals(43, store.get("number", 0L));
+		assertEquals("43", this.backend.get("number"));
+	}
+
+	@Test
+	public void prefixMapsContainTheKeysStartingWithThePrefixOnly() {
+
+		this.backend.store("table", "0");
+		this.backend.store("table.a", "1");
+		this.backend.store("table.b", "x");
+		this.backend.store("tablex", "3");
+
+		PrefStore store = new PrefStore(this.backend);
+		assertEquals(ImmutableMap.of("table.a", "1", "table.b", "x"), store.getPrefixMap("table."));
+		assertEquals(ImmutableMap.of("table.a", 1L, "table.b", -1L), store.getPrefixMap("table.", -1L));
+		assertEquals(4, store.asMap().size());
+	}
+
+	//~ Inner Classes --------------------------------------------------------------------------------------------------
+
+	private static final class RecordingListener implements PrefStore.Listener {
+
+		private final List<String> changes = Lists.newArrayList();
+
+		@Override
+		public void notifyChanged(final String key, final String value) {
+			this.changes.add(key + "=" + value);
+		}
+	}
+
+	/** keeps the preferences in memory and records the calls, bulk-operations are recorded as one call */
+	static final class MapBackend extends AbstractPrefStoreBackend {
+
+		final List<String> calls				 = new CopyOnWriteArrayList<String>();
+		volatile boolean failing				 = false;
+		private final Map<String, String> values = Maps.newTreeMap();
+
+		@Override
+		public synchronized String get(final String key) {
+			return this.values.get(key);
+		}
+
+		@Override
+		public synchronized void store(final String key, final String value) {
+			this.failIfFailing();
+			this.calls.add("store " + key + "=" + value);
+			this.values.put(key, value);
+		}
+
+		@Override
+		public synchronized ImmutableSet<String> getKeys() {
+			return ImmutableSet.copyOf(this.values.keySet());
+		}
+
+		@Override
+		public synchronized void remove(final String key) {
+			this.failIfFailing();
+			this.calls.add("remove " + key);
+			this.values.remove(key);
+		}
+
+		@Override
+		public synchronized void storeAll(final Map<String, String> values) {
+			this.failIfFailing();
+			this.calls.add("storeAll " + new TreeMap<String, String>(values));
+			this.values.putAll(values);
+		}
+
+		@Override
+		public synchronized void storeAndRemoveAll(final Map<String, String> values, final Set<String> removals) {
+			this.failIfFailing();
+			this.calls.add(
+				"storeAndRemoveAll " + new TreeMap<String, String>(values) + " " + new TreeSet<String>(removals));
+			this.values.keySet().removeAll(removals);
+			this.values.putAll(values);
+		}
+
+		private void failIfFailing() {
+			if (this.failing) {
+				throw new IllegalStateException("failing");
+			}
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package org.appkit.registry;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.appkit.util.ParamInputSupplier;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.ImageLoader;
+import org.eclipse.swt.graphics.PaletteData;
+import org.eclipse.swt.graphics.RGB;
+import org.eclipse.swt.graphics.Rectangle;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Atlases are decoded into ImageData, which doesn't need a display.
+ */
+public class ImageAtlasTest {
+
+	//~ Static fields/initializers -------------------------------------------------------------------------------------
+
+	private static final RGB RED  = new RGB(255, 0, 0);
+	private static final RGB BLUE = new RGB(0, 0, 255);
+
+	/* two icons of 16x16 side by side, red on the left and blue on the right */
+	private static final ImmutableMap<String, Rectangle> ICONS =
+		ImmutableMap.of(
+			"red",
+			new Rectangle(0, 0, 16, 16),
+			"blue",
+			new Rectangle(16, 0, 16, 16),
+			"outside",
+			new Rectangle(24, 0, 16, 16));
+
+	//~ Instance fields ------------------------------------------------------------------------------------------------
+
+	private final AtomicInteger decoded = new AtomicInteger();
+	private final ParamInputSupplier<String, InputStream> atlasStream =
+		new ParamInputSupplier<String, InputStream>() {
+			@Override
+			public InputStream getInput(final String key) throws IOException {
+				decoded.incrementAndGet();
+				return new ByteArrayInputStream(atlasPng());
+			}
+		};
+
+	//~ Methods --------------------------------------------------------------------------------------------------------
+
+	@Test
+	public void iconsAreCutWithTheirAlpha() throws IOException {
+
+		ImageAtlas<String> atlas = new ImageAtlas<String>("atlas", this.atlasStream, ICONS);
+
+		ImageData red = atlas.cut("red");
+		assertEquals(16, red.width);
+		assertEquals(16, red.height);
+		assertEquals(RED, red.palette.getRGB(red.getPixel(15, 15)));
+		assertEquals(40, red.getAlpha(5, 0));
+
+		/* alpha rises from left to right across the whole atlas */
+		ImageData blue = atlas.cut("blue");
+		assertEquals(BLUE, blue.palette.getRGB(blue.getPixel(0, 0)));
+		assertEquals(128, blue.getAlpha(0, 7));
+	}
+
+	@Test
+	public void atlasIsDecodedOnce() throws IOException {
+
+		ImageAtlas<String> atlas = new ImageAtlas<String>("atlas", this.atlasStream, ICONS);
+		assertEquals(0, this.decoded.get());
+
+		atlas.cut("red");
+		atlas.cut("blue");
+		atlas.cut("red");
+		assertEquals(1, this.decoded.get());
+	}
+
+	@Test
+	public void iconsOutsideOfTheAtlasFail() throws IOException {
+
+		ImageAtlas<String> atlas = new ImageAtlas<String>("atlas", this.atlasStream, ICONS);
+		try {
+			atlas.cut("outside");
+			fail("cut an icon outside of the atlas");
+		} catch (final IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("outside"));
+		}
+
+		/* the other icons are still fine */
+		assertEquals(16, atlas.cut("blue").width);
+	}
+
+	@Test(expected = IOException.class)
+	public void missingStreamFails() throws IOException {
+
+		ImageAtlas<String> atlas =
+			new ImageAtlas<String>(
+				"atlas",
+				new ParamInputSupplier<String, InputStream>() {
+					@Override
+					public InputStream getInput(final String key) {
+						return null;
+					}
+				},
+				ICONS);
+		atlas.cut("red");
+	}
+
+	/* the encoded atlas, 32x16 pixels with an alpha of 8 times x */
+	private static byte[] atlasPng() {
+
+		ImageData data = new ImageData(32, 16, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF));
+		for (int y = 0; y < data.height; y++) {
+			for (int x = 0; x < data.width; x++) {
+				data.setPixel(x, y, (x < 16) ? 0xFF0000 : 0x0000FF);
+				data.setAlpha(x, y, x * 8);
+			}
+		}
+
+		ImageLoader loader = new ImageLoader();
+		loader.data = new ImageData[] { data };
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		loader.save(out, SWT.IMAGE_PNG);
+
+		return out.toByteArray();
+	}
+}
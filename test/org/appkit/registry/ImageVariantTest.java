@@ -0,0 +1,113 @@
+package org.appkit.registry;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.PaletteData;
+import org.eclipse.swt.graphics.RGB;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Variants are derived from ImageData, which doesn't need a display.
+ */
+public class ImageVariantTest {
+
+	//~ Static fields/initializers -------------------------------------------------------------------------------------
+
+	private static final int BLUE  = 0x0000FF;
+	private static final int GREEN = 0x00FF00;
+
+	//~ Methods --------------------------------------------------------------------------------------------------------
+
+	@Test
+	public void scaledChangesTheSize() {
+
+		ImageData scaled = ImageVariant.scaled(8, 6).apply(filled(4, 4, BLUE), null);
+
+		assertEquals(8, scaled.width);
+		assertEquals(6, scaled.height);
+		assertEquals(BLUE, scaled.getPixel(7, 5));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void scaledNeedsAPositiveSize() {
+		ImageVariant.scaled(0, 16);
+	}
+
+	@Test
+	public void grayedKeepsBrightnessAndTransparency() {
+
+		ImageData indexed =
+			new ImageData(2, 1, 8, new PaletteData(new RGB[] { new RGB(255, 0, 0), new RGB(0, 0, 255) }));
+		indexed.setPixel(0, 0, 0);
+		indexed.setPixel(1, 0, 1);
+		indexed.transparentPixel = 1;
+
+		ImageData grayed = ImageVariant.grayed().apply(indexed, null);
+
+		/* red weighs 77 of 256 */
+		assertEquals(0x4C4C4C, grayed.getPixel(0, 0));
+		assertEquals(255, grayed.getAlpha(0, 0));
+		assertEquals(0, grayed.getAlpha(1, 0));
+	}
+
+	@Test
+	public void badgeIsBlendedIntoTheBottomRightCorner() {
+
+		final ImageData badge = filled(2, 2, GREEN);
+		badge.alphaData = new byte[] { (byte) 255, 0, (byte) 255, (byte) 128 };
+
+		final List<Object> loaded = Lists.newArrayList();
+		ImageData badged		  =
+			ImageVariant.badged("new").apply(
+				filled(4, 4, BLUE),
+				new Function<Object, ImageData>() {
+					@Override
+					public ImageData apply(final Object badgeKey) {
+						loaded.add(badgeKey);
+						return badge;
+					}
+				});
+
+		assertEquals(Lists.<Object>newArrayList("new"), loaded);
+		assertEquals(BLUE, badged.getPixel(0, 0));
+		assertEquals(GREEN, badged.getPixel(2, 2));
+
+		/* transparent parts of the badge leave the image alone, translucent ones are blended */
+		assertEquals(BLUE, badged.getPixel(3, 2));
+		assertEquals(0x00807F, badged.getPixel(3, 3));
+		assertEquals(255, badged.getAlpha(3, 3));
+	}
+
+	@Test
+	public void variantsAreValuesInTheOrderOfTheirOperations() {
+
+		ImageVariant scaledThenGrayed = ImageVariant.scaled(16, 16).thenGrayed();
+
+		assertEquals(ImageVariant.scaled(16, 16).thenGrayed(), scaledThenGrayed);
+		assertEquals(ImageVariant.scaled(16, 16).thenGrayed().hashCode(), scaledThenGrayed.hashCode());
+		assertFalse(scaledThenGrayed.equals(ImageVariant.grayed().thenScaled(16, 16)));
+		assertFalse(ImageVariant.badged("new").equals(ImageVariant.badged("old")));
+		assertEquals("scaled 16x16,grayed", scaledThenGrayed.toString());
+	}
+
+	/* an opaque image of one color */
+	private static ImageData filled(final int width, final int height, final int rgb) {
+
+		ImageData data = new ImageData(width, height, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF));
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				data.setPixel(x, y, rgb);
+			}
+		}
+
+		return data;
+	}
+}
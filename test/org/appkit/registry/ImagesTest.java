@@ -0,0 +1,195 @@
+package org.appkit.registry;
+
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.appkit.util.ParamInputSupplier;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.ImageLoader;
+import org.eclipse.swt.graphics.PaletteData;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Shell;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Needs an SWT display, the tests are skipped without one.
+ */
+public class ImagesTest {
+
+	//~ Static fields/initializers -------------------------------------------------------------------------------------
+
+	private static final long TIMEOUT_MILLIS = 10000;
+	private static Display display;
+
+	//~ Instance fields ------------------------------------------------------------------------------------------------
+
+	private final ConcurrentMap<String, AtomicInteger> reads = Maps.newConcurrentMap();
+	private final ParamInputSupplier<String, InputStream> pngs =
+		new ParamInputSupplier<String, InputStream>() {
+			@Override
+			public InputStream getInput(final String key) throws IOException {
+				reads.putIfAbsent(key, new AtomicInteger());
+				reads.get(key).incrementAndGet();
+				if (Display.getCurrent() != null) {
+					throw new IOException("decoded on the display-thread");
+				}
+
+				return new ByteArrayInputStream(png(16, 8));
+			}
+		};
+	private Shell shell;
+
+	//~ Methods --------------------------------------------------------------------------------------------------------
+
+	@BeforeClass
+	public static void createDisplay() {
+		try {
+			display = Display.getDefault();
+		} catch (final Throwable e) {
+			Assume.assumeNoException(e);
+		}
+	}
+
+	@Before
+	public void createShell() {
+		this.shell = new Shell(display);
+	}
+
+	@After
+	public void disposeShell() {
+		this.shell.dispose();
+	}
+
+	@Test
+	public void imageIsSetOnceItIsDecoded() {
+
+		Label label = new Label(this.shell, SWT.NONE);
+		Images.setAsync(label, "async-1", this.pngs, null);
+		assertNull(label.getImage());
+
+		waitFor(label);
+		assertEquals(16, label.getImage().getBounds().width);
+		assertEquals(1, this.reads.get("async-1").get());
+
+		Images.putBack(label);
+	}
+
+	@Test
+	public void concurrentRequestsShareOneDecoding() {
+
+		Label first  = new Label(this.shell, SWT.NONE);
+		Label second = new Label(this.shell, SWT.NONE);
+		Images.setAsync(first, "async-2", this.pngs, null);
+		Images.setAsync(second, "async-2", this.pngs, null);
+
+		waitFor(first);
+		waitFor(second);
+		assertSame(first.getImage(), second.getImage());
+		assertEquals(1, this.reads.get("async-2").get());
+
+		Images.putBack(first);
+		Images.putBack(second);
+	}
+
+	@Test
+	public void putBackCancelsTheWait() {
+
+		Label cancelled = new Label(this.shell, SWT.NONE);
+		Label waiting   = new Label(this.shell, SWT.NONE);
+		Images.setAsync(cancelled, "async-3", this.pngs, null);
+		Images.setAsync(waiting, "async-3", this.pngs, null);
+		Images.putBack(cancelled);
+
+		waitFor(waiting);
+		assertNull(cancelled.getImage());
+
+		/* only the waiting label uses the image, putting it back disposes it */
+		Images.putBack(waiting);
+		assertTrue(waiting.getImage().isDisposed());
+	}
+
+	@Test
+	public void prefetchedImagesAreSetFromTheCache() throws Exception {
+
+		Images.keepCache(true);
+		ListenableFuture<?> prefetched = Images.prefetch(Arrays.asList("async-4", "async-5"), this.pngs);
+		long deadline				   = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while (! prefetched.isDone() && (System.currentTimeMillis() < deadline)) {
+			readAndDispatch();
+		}
+		assertEquals(Arrays.asList("async-4", "async-5"), prefetched.get(0, TimeUnit.MILLISECONDS));
+
+		/* set immediately, without another decoding */
+		Label label = new Label(this.shell, SWT.NONE);
+		Images.setAsync(label, "async-4", this.pngs, null);
+		assertNotNull(label.getImage());
+		assertEquals(1, this.reads.get("async-4").get());
+
+		/* turning the cache off disposes the prefetched image nobody used */
+		Images.putBack(label);
+		Images.keepCache(false);
+		assertEquals(1, this.reads.get("async-5").get());
+		assertTrue(label.getImage().isDisposed());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void prefetchNeedsAKeptCache() {
+		Images.prefetch(Arrays.asList("async-6"), this.pngs);
+	}
+
+	/* runs the event loop until the image is set on the label */
+	private static void waitFor(final Label label) {
+
+		long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while ((label.getImage() == null) && (System.currentTimeMillis() < deadline)) {
+			readAndDispatch();
+		}
+		assertNotNull("image wasn't set in time", label.getImage());
+	}
+
+	private static void readAndDispatch() {
+		if (! display.readAndDispatch()) {
+			try {
+				Thread.sleep(1);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/* an encoded image of the given size */
+	private static byte[] png(final int width, final int height) {
+
+		ImageLoader loader = new ImageLoader();
+		loader.data = new ImageData[] { new ImageData(width, height, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF)) };
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		loader.save(out, SWT.IMAGE_PNG);
+
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,215 @@
+package org.appkit.registry;
+
+import com.google.common.cache.Weigher;
+
+import org.appkit.registry.ResourceCache.Entry;
+
+import org.eclipse.swt.graphics.Resource;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ResourceCacheTest {
+
+	//~ Methods --------------------------------------------------------------------------------------------------------
+
+	@Test
+	public void resourceIsDisposedWithItsLastUsage() {
+
+		ResourceCache<String, FakeResource> cache = new ResourceCache<String, FakeResource>();
+		Entry<String, FakeResource> entry		  = cache.add("red", new FakeResource());
+		assertEquals(0, entry.usage);
+
+		cache.use(entry);
+		cache.use(entry);
+		assertEquals(2, entry.usage);
+
+		cache.release(entry);
+		assertEquals(1, entry.usage);
+		assertFalse(entry.resource.isDisposed());
+		assertSame(entry, cache.get("red"));
+
+		cache.release(entry);
+		assertEquals(0, entry.usage);
+		assertTrue(entry.resource.isDisposed());
+		assertNull(cache.get("red"));
+	}
+
+	@Test
+	public void keysAreComparedByValue() {
+
+		ResourceCache<String, FakeResource> cache = new ResourceCache<String, FakeResource>();
+		Entry<String, FakeResource> entry		  = cache.add(new String("red"), new FakeResource());
+
+		assertSame(entry, cache.get(new String("red")));
+		assertNull(cache.get("blue"));
+		assertEquals(1, cache.getStats().hitCount());
+		assertEquals(1, cache.getStats().missCount());
+		assertEquals(1, cache.getStats().loadCount());
+	}
+
+	@Test
+	public void keptCacheDisposesUnusedResourcesWhenTurnedOff() {
+
+		ResourceCache<String, FakeResource> cache = new ResourceCache<String, FakeResource>();
+		assertFalse(cache.isKept());
+		cache.keepCache(true);
+		assertTrue(cache.isKept());
+
+		Entry<String, FakeResource> entry = cache.add("red", new FakeResource());
+		cache.use(entry);
+		cache.release(entry);
+		assertFalse(entry.resource.isDisposed());
+
+		/* used again from the cache, not reloaded */
+		assertSame(entry, cache.get("red"));
+		cache.use(entry);
+		cache.release(entry);
+		assertEquals(1, cache.getStats().loadCount());
+
+		cache.keepCache(false);
+		assertTrue(entry.resource.isDisposed());
+		assertNull(cache.peek("red"));
+	}
+
+	@Test
+	public void usedResourcesSurviveTurningTheCacheOff() {
+
+		ResourceCache<String, FakeResource> cache = new ResourceCache<String, FakeResource>();
+		cache.keepCache(true);
+
+		Entry<String, FakeResource> entry = cache.add("red", new FakeResource());
+		cache.use(entry);
+		cache.keepCache(false);
+		assertFalse(entry.resource.isDisposed());
+
+		cache.release(entry);
+		assertTrue(entry.resource.isDisposed());
+	}
+
+	@Test
+	public void boundedCacheEvictsTheLeastRecentlyUsed() {
+
+		ResourceCache<String, FakeResource> cache = new ResourceCache<String, FakeResource>();
+		cache.keepCache(2, Long.MAX_VALUE);
+
+		Entry<String, FakeResource> red   = useOnce(cache, "red");
+		Entry<String, FakeResource> green = useOnce(cache, "green");
+
+		/* red becomes the most recently used */
+		cache.use(cache.get("red"));
+		cache.release(red);
+
+		Entry<String, FakeResource> blue = useOnce(cache, "blue");
+		assertTrue(green.resource.isDisposed());
+		assertFalse(red.resource.isDisposed());
+		assertFalse(blue.resource.isDisposed());
+		assertEquals(1, cache.getStats().evictionCount());
+	}
+
+	@Test
+	public void boundedCacheEvictsByWeight() {
+
+		ResourceCache<String, FakeResource> cache =
+			new ResourceCache<String, FakeResource>(
+				new Weigher<String, FakeResource>() {
+					@Override
+					public int weigh(final String key, final FakeResource resource) {
+						return key.length();
+					}
+				});
+		cache.keepCache(Integer.MAX_VALUE, 8);
+
+		Entry<String, FakeResource> red   = useOnce(cache, "red");
+		Entry<String, FakeResource> green = useOnce(cache, "green");
+		assertFalse(red.resource.isDisposed());
+
+		/* 3 + 5 + 4 exceeds 8, red and then green have to go */
+		Entry<String, FakeResource> blue = useOnce(cache, "blue");
+		assertTrue(red.resource.isDisposed());
+		assertTrue(green.resource.isDisposed());
+		assertFalse(blue.resource.isDisposed());
+	}
+
+	@Test
+	public void usedResourcesArentEvicted() {
+
+		ResourceCache<String, FakeResource> cache = new ResourceCache<String, FakeResource>();
+		cache.keepCache(0, 0);
+
+		Entry<String, FakeResource> used = cache.add("red", new FakeResource());
+		cache.use(used);
+		useOnce(cache, "green");
+
+		assertFalse(used.resource.isDisposed());
+		assertNull(cache.peek("green"));
+	}
+
+	@Test
+	public void derivedResourceUsesItsParentUntilItIsDisposed() {
+
+		ResourceCache<String, FakeResource> cache = new ResourceCache<String, FakeResource>();
+		Entry<String, FakeResource> base		  = cache.add("icon", new FakeResource());
+		cache.use(base);
+
+		Entry<String, FakeResource> grayed = cache.add("icon grayed", new FakeResource(), base);
+		assertEquals(2, base.usage);
+
+		cache.release(base);
+		assertFalse(base.resource.isDisposed());
+
+		cache.use(grayed);
+		cache.release(grayed);
+		assertTrue(grayed.resource.isDisposed());
+		assertTrue(base.resource.isDisposed());
+	}
+
+	@Test
+	public void addedResourceIsntEvictedBeforeItIsUsed() {
+
+		ResourceCache<String, FakeResource> cache = new ResourceCache<String, FakeResource>();
+		cache.keepCache(0, 0);
+
+		Entry<String, FakeResource> entry = cache.add("red", new FakeResource());
+		assertFalse(entry.resource.isDisposed());
+
+		cache.use(entry);
+		cache.release(entry);
+		assertTrue(entry.resource.isDisposed());
+	}
+
+	/* adds a resource, uses it and releases it again */
+	private static Entry<String, FakeResource> useOnce(final ResourceCache<String, FakeResource> cache,
+													   final String key) {
+
+		Entry<String, FakeResource> entry = cache.add(key, new FakeResource());
+		cache.use(entry);
+		cache.release(entry);
+
+		return entry;
+	}
+
+	//~ Inner Classes --------------------------------------------------------------------------------------------------
+
+	/** stands in for colors, fonts and images, which need a display */
+	static final class FakeResource extends Resource {
+
+		private boolean disposed = false;
+
+		@Override
+		public void dispose() {
+			assertFalse("disposed twice", this.disposed);
+			this.disposed = true;
+		}
+
+		@Override
+		public boolean isDisposed() {
+			return this.disposed;
+		}
+	}
+}
@@ -0,0 +1,193 @@
+package org.appkit.registry;
+
+import com.google.common.collect.Lists;
+
+import java.util.List;
+
+import org.appkit.registry.ResourceCache.Entry;
+import org.appkit.registry.ResourceCacheTest.FakeResource;
+import org.appkit.registry.TableItemUsages.ItemSetter;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Event;
+import org.eclipse.swt.widgets.Listener;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableItem;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Needs an SWT display for the table, the tests are skipped without one.
+ */
+public class TableItemUsagesTest {
+
+	//~ Static fields/initializers -------------------------------------------------------------------------------------
+
+	private static final int ITEMS = 10;
+	private static Display display;
+
+	//~ Instance fields ------------------------------------------------------------------------------------------------
+
+	private final ResourceCache<String, FakeResource> cache = new ResourceCache<String, FakeResource>();
+	private final List<String> sets							= Lists.newArrayList();
+	private final TableItemUsages<String, FakeResource> usages =
+		new TableItemUsages<String, FakeResource>(
+			this.cache,
+			new ItemSetter<FakeResource>() {
+				@Override
+				public void set(final TableItem item, final int slot, final FakeResource resource) {
+					sets.add(item.getParent().indexOf(item) + "/" + slot + "=" + resource);
+				}
+			});
+	private Shell shell;
+	private Table table;
+	private Entry<String, FakeResource> red;
+	private Entry<String, FakeResource> blue;
+
+	//~ Methods --------------------------------------------------------------------------------------------------------
+
+	@BeforeClass
+	public static void createDisplay() {
+		try {
+			display = Display.getDefault();
+		} catch (final Throwable e) {
+			Assume.assumeNoException(e);
+		}
+	}
+
+	@Before
+	public void createTable() {
+		this.shell = new Shell(display);
+		this.table = new Table(this.shell, SWT.NONE);
+		for (int i = 0; i < ITEMS; i++) {
+			new TableItem(this.table, SWT.NONE);
+		}
+		this.red  = this.cache.add("red", new FakeResource());
+		this.blue = this.cache.add("blue", new FakeResource());
+	}
+
+	@After
+	public void disposeShell() {
+		this.shell.dispose();
+	}
+
+	@Test
+	public void everyItemCountsOneUsage() {
+
+		this.usages.set(this.table, 0, ITEMS - 1, 0, this.red);
+		assertEquals(ITEMS, this.red.usage);
+		assertEquals(ITEMS, this.sets.size());
+
+		/* setting the same entry again sets the resource, the item may have been reset, but doesn't count */
+		this.usages.set(this.table, 2, 5, 0, this.red);
+		assertEquals(ITEMS, this.red.usage);
+		assertEquals(ITEMS + 4, this.sets.size());
+	}
+
+	@Test
+	public void replacingReleasesTheEntryUsedBefore() {
+
+		this.usages.set(this.table, 0, ITEMS - 1, 0, this.red);
+		this.usages.set(this.table, 0, 4, 0, this.blue);
+
+		assertEquals(5, this.red.usage);
+		assertEquals(5, this.blue.usage);
+	}
+
+	@Test
+	public void slotsAreCountedSeparately() {
+
+		this.usages.set(this.table, 0, 0, 0, this.red);
+		this.usages.set(this.table, 0, 0, 1, this.red);
+		assertEquals(2, this.red.usage);
+
+		this.usages.putBack(this.table, 0, 0);
+		assertEquals(0, this.red.usage);
+		assertTrue(this.sets.contains("0/0=null"));
+		assertTrue(this.sets.contains("0/1=null"));
+	}
+
+	@Test
+	public void puttingBackReleasesTheEntries() {
+
+		this.usages.set(this.table, 0, ITEMS - 1, 0, this.red);
+		this.usages.putBack(this.table, 0, 4);
+		assertEquals(5, this.red.usage);
+		assertFalse(this.red.resource.isDisposed());
+
+		this.usages.putBack(this.table, 5, ITEMS - 1);
+		assertTrue(this.red.resource.isDisposed());
+		assertNull(this.cache.peek("red"));
+	}
+
+	@Test
+	public void removedItemsAreReleasedWithTheNextChange() {
+
+		this.usages.set(this.table, 0, ITEMS - 1, 0, this.red);
+		this.table.remove(0, 3);
+		assertEquals(ITEMS, this.red.usage);
+
+		this.usages.set(this.table, 0, 0, 1, this.blue);
+		assertEquals(ITEMS - 4, this.red.usage);
+		assertEquals(1, this.blue.usage);
+	}
+
+	@Test
+	public void clearedItemsOfVirtualTablesAreReleasedWhenTheyAskForData() {
+
+		final Table virtual							   = new Table(this.shell, SWT.VIRTUAL);
+		final List<Entry<String, FakeResource>> current = Lists.newArrayList(this.red);
+		virtual.addListener(
+			SWT.SetData,
+			new Listener() {
+				@Override
+				public void handleEvent(final Event event) {
+
+					int index = virtual.indexOf((TableItem) event.item);
+					usages.set(virtual, index, index, 0, current.get(0));
+				}
+			});
+		virtual.setItemCount(ITEMS);
+		for (int i = 0; i < ITEMS; i++) {
+			virtual.getItem(i).getText();
+		}
+		assertEquals(ITEMS, this.red.usage);
+
+		/* the cleared item asks for its data when it is accessed next */
+		current.set(0, this.blue);
+		virtual.clear(0);
+		virtual.getItem(0).getText();
+		assertEquals(ITEMS - 1, this.red.usage);
+		assertEquals(1, this.blue.usage);
+
+		virtual.clearAll();
+		for (int i = 0; i < ITEMS; i++) {
+			virtual.getItem(i).getText();
+		}
+		assertTrue(this.red.resource.isDisposed());
+		assertEquals(ITEMS, this.blue.usage);
+	}
+
+	@Test
+	public void disposingTheTableReleasesAllItems() {
+
+		this.usages.set(this.table, 0, ITEMS - 1, 0, this.red);
+		this.usages.set(this.table, 0, 0, 1, this.blue);
+		this.table.dispose();
+
+		assertTrue(this.red.resource.isDisposed());
+		assertTrue(this.blue.resource.isDisposed());
+		assertNull(this.cache.peek("blue"));
+	}
+}